@@ -5,14 +5,19 @@
  */
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminIntercepter;
+import com.hmdp.utils.CacheWarmer;
 import com.hmdp.utils.LoginIntercepter;
 import com.hmdp.utils.RefreshTokenIntercepter;
+import com.hmdp.utils.WarmupIntercepter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.Set;
 
 /**
  * 配置拦截器
@@ -26,6 +31,15 @@ public class MvcConfig implements WebMvcConfigurer {
 	@Resource
 	private StringRedisTemplate stringRedisTemplate;
 
+	@Resource
+	private CacheWarmer cacheWarmer;
+
+	/**
+	 * 管理员用户id，可以访问 /admin/**
+	 */
+	@Value("${hmdp.admin.user-ids:}")
+	private Set<Long> adminUserIds;
+
 	/**
 	 * 配置拦截器
 	 *
@@ -49,6 +63,13 @@ public class MvcConfig implements WebMvcConfigurer {
 		// order 确保拦截器执行顺序。order 值越小，执行优先级越高
 		registry.addInterceptor(new RefreshTokenIntercepter(stringRedisTemplate))
 				.addPathPatterns("/**").order(0);
+		// 管理端拦截器，只允许管理员访问
+		registry.addInterceptor(new AdminIntercepter(adminUserIds))
+				.addPathPatterns("/admin/**").order(2);
+		// 缓存预热拦截器，预热完成之前拒绝依赖预热数据的读请求：店铺详情、按类型和关键字查询店铺；输入提示只使用内存索引
+		registry.addInterceptor(new WarmupIntercepter(cacheWarmer))
+				.addPathPatterns("/shop/*", "/shop/of/**")
+				.excludePathPatterns("/shop/suggest").order(-1);
 	}
 
 }
@@ -0,0 +1,71 @@
+package com.hmdp.config;
+
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.BloomFilterRegistry;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRebuildLock;
+import com.hmdp.utils.SoldOutRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_CHANNEL;
+
+/**
+ * 配置 Redis 发布订阅
+ */
+@Configuration
+public class RedisConfig {
+
+	/**
+	 * 订阅缓存失效消息，清除当前节点的本地缓存；订阅锁释放消息，唤醒等待缓存重建锁的线程；
+	 * 订阅店铺类型变更消息，刷新店铺类型快照；订阅秒杀券售罄、补充库存消息，更新当前节点的售罄标记；
+	 * 订阅布隆过滤器新增id消息，写入当前节点的本地位图
+	 *
+	 * @param connectionFactory   redis 连接工厂
+	 * @param cacheClient         缓存工具类
+	 * @param rebuildLock         缓存重建互斥锁
+	 * @param shopTypeService     店铺类型服务
+	 * @param soldOutRegistry     秒杀券售罄标记
+	 * @param bloomFilterRegistry 布隆过滤器注册中心
+	 * @return RedisMessageListenerContainer
+	 */
+	@Bean
+	public RedisMessageListenerContainer redisMessageListenerContainer(
+			RedisConnectionFactory connectionFactory, CacheClient cacheClient, CacheRebuildLock rebuildLock,
+			IShopTypeService shopTypeService, SoldOutRegistry soldOutRegistry, BloomFilterRegistry bloomFilterRegistry) {
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(connectionFactory);
+		container.addMessageListener(
+				(message, pattern) -> cacheClient.evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+				new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+		container.addMessageListener(
+				(message, pattern) -> rebuildLock.onReleased(new String(message.getBody(), StandardCharsets.UTF_8)),
+				new ChannelTopic(LOCK_RELEASE_CHANNEL));
+		container.addMessageListener(
+				(message, pattern) -> shopTypeService.refreshSnapshot(
+						Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+				new ChannelTopic(SHOP_TYPE_CHANNEL));
+		container.addMessageListener(
+				(message, pattern) -> soldOutRegistry.onSoldOut(
+						Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+				new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+		container.addMessageListener(
+				(message, pattern) -> soldOutRegistry.onRestocked(
+						Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+				new ChannelTopic(SECKILL_RESTOCK_CHANNEL));
+		container.addMessageListener(
+				(message, pattern) -> bloomFilterRegistry.onAdded(new String(message.getBody(), StandardCharsets.UTF_8)),
+				new ChannelTopic(BLOOM_FILTER_CHANNEL));
+		return container;
+	}
+}
@@ -1,19 +1,14 @@
 package com.hmdp.controller;
 
 
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.User;
 import com.hmdp.service.IBlogService;
-import com.hmdp.service.IUserService;
-import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -29,8 +24,6 @@ public class BlogController {
 
     @Resource
     private IBlogService blogService;
-    @Resource
-    private IUserService userService;
 
     @PostMapping
     public Result saveBlog(@RequestBody Blog blog) {
@@ -51,33 +44,29 @@ public class BlogController {
         return Result.ok();
     }
 
+    /**
+     * 查询我的博文
+     * @param current 页码
+     * @param cursor 游标分页时上一页返回的游标，第一页传空字符串；不传时按页码分页
+     * @return 博文列表
+     */
     @GetMapping("/of/me")
-    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                              @RequestParam(value = "cursor", required = false) String cursor) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
-        // 根据用户查询
-        Page<Blog> page = blogService.query()
-                .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        return Result.ok(records);
+        return blogService.queryMyBlog(user.getId(), current, cursor);
     }
 
+    /**
+     * 查询热门博文
+     * @param current 页码
+     * @param cursor 游标分页时上一页返回的游标，第一页传空字符串；不传时按页码分页
+     * @return 博文列表
+     */
     @GetMapping("/hot")
-    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
-        // 根据用户查询
-        Page<Blog> page = blogService.query()
-                .orderByDesc("liked")
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 获取当前页数据
-        List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog ->{
-            Long userId = blog.getUserId();
-            User user = userService.getById(userId);
-            blog.setName(user.getNickName());
-            blog.setIcon(user.getIcon());
-        });
-        return Result.ok(records);
+    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                               @RequestParam(value = "cursor", required = false) String cursor) {
+        return blogService.queryHotBlog(current, cursor);
     }
 }
@@ -0,0 +1,159 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.CacheWarmer;
+import com.hmdp.utils.ExpiryPolicy;
+import com.hmdp.utils.LocalShopGeoIndex;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.ShopSuggestTrie;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存管理控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private CacheMetrics cacheMetrics;
+
+    @Resource
+    private CacheWarmer cacheWarmer;
+
+    @Resource
+    private ExpiryPolicy expiryPolicy;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private LocalShopGeoIndex localShopGeoIndex;
+
+    @Resource
+    private ShopSearchIndex shopSearchIndex;
+
+    @Resource
+    private ShopSuggestTrie shopSuggestTrie;
+
+    /**
+     * 查询缓存命中统计
+     * @return 各级缓存的命中次数和重建统计
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        return Result.ok(cacheClient.getStats());
+    }
+
+    /**
+     * 查询各 key 前缀的缓存指标
+     * @return 命中率，以及命中、空值命中、未命中、查询数据库、返回旧数据、加锁成功/失败、重建的次数和耗时分布（微秒）
+     */
+    @GetMapping("/metrics")
+    public Result metrics() {
+        return Result.ok(cacheMetrics.snapshot());
+    }
+
+    /**
+     * 查询热点key
+     * @return 最近窗口内访问次数最多的key，promoted 表示已提升为进程内副本
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(cacheClient.getHotKeys());
+    }
+
+    /**
+     * 手动触发缓存预热
+     * @return 无
+     */
+    @PostMapping("/warmup")
+    public Result warmup() {
+        if (!cacheWarmer.warmupAsync()) {
+            return Result.fail("缓存预热正在执行");
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 查询缓存预热进度
+     * @return 各数据表的预热进度
+     */
+    @GetMapping("/warmup")
+    public Result warmupProgress() {
+        return Result.ok(cacheWarmer.getProgress());
+    }
+
+    /**
+     * 店铺类型变更后通知所有节点刷新店铺类型快照
+     * @return 无
+     */
+    @PostMapping("/shop-type")
+    public Result refreshShopType() {
+        shopTypeService.publishTypeChange();
+        return Result.ok();
+    }
+
+    /**
+     * 从数据库全量加载店铺地理位置索引
+     * @return 加载的店铺数量
+     */
+    @PostMapping("/shop-geo")
+    public Result loadShopGeo() {
+        return Result.ok(shopGeoIndex.loadAll());
+    }
+
+    /**
+     * 从数据库重建本地店铺地理位置索引
+     * @return 店铺数量
+     */
+    @PostMapping("/shop-geo/local")
+    public Result rebuildLocalShopGeo() {
+        return Result.ok(localShopGeoIndex.rebuild());
+    }
+
+    /**
+     * 从数据库重建店铺搜索索引
+     * @return 店铺数量
+     */
+    @PostMapping("/shop-search")
+    public Result rebuildShopSearch() {
+        return Result.ok(shopSearchIndex.rebuild());
+    }
+
+    /**
+     * 从数据库重建店铺输入提示
+     * @return 前缀树节点数量
+     */
+    @PostMapping("/shop-suggest")
+    public Result rebuildShopSuggest() {
+        return Result.ok(shopSuggestTrie.rebuild());
+    }
+
+    /**
+     * 查询缓存过期时间分布
+     * @return 各 key 前缀实际过期时间与基准过期时间的倍数分布
+     */
+    @GetMapping("/expiry")
+    public Result expiryHistogram() {
+        return Result.ok(expiryPolicy.getHistograms());
+    }
+}
@@ -0,0 +1,41 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IShopService;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 店铺管理控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/shop")
+public class ShopAdminController {
+
+    @Resource
+    private IShopService shopService;
+
+    /**
+     * 更新店铺的计数器
+     * @param id 店铺id
+     * @param field 计数器字段：sold、comments、score
+     * @param delta 增量，可以为负数
+     * @return 无
+     */
+    @PutMapping("/{id}/counter")
+    public Result incrementCounter(
+            @PathVariable("id") Long id,
+            @RequestParam("field") String field,
+            @RequestParam("delta") Integer delta
+    ) {
+        return shopService.incrementCounter(id, field, delta);
+    }
+}
@@ -2,14 +2,17 @@ package com.hmdp.controller;
 
 
 import com.hmdp.dto.Result;
-import com.hmdp.entity.ShopType;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.service.IShopTypeService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -25,8 +28,21 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 查询店铺类型，直接返回本地快照中已序列化的响应体，ETag 未变化时返回304
+     * @param ifNoneMatch 客户端缓存的 ETag
+     * @return 店铺类型列表
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
-        return typeService.queryTypeLists();
+    public ResponseEntity<byte[]> queryTypeList(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        ShopTypeSnapshot snapshot = typeService.getSnapshot();
+        if (snapshot.getEtag().equals(ifNoneMatch)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getEtag()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getBody());
     }
 }
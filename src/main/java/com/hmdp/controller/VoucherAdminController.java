@@ -0,0 +1,36 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.IVoucherService;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 优惠券管理控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/voucher")
+public class VoucherAdminController {
+
+    @Resource
+    private IVoucherService voucherService;
+
+    /**
+     * 补充秒杀券库存
+     * @param voucherId 秒杀券id
+     * @param count 增加的库存
+     * @return 无
+     */
+    @PostMapping("/seckill/{id}/restock")
+    public Result restockSeckillVoucher(@PathVariable("id") Long voucherId, @RequestParam("count") Integer count) {
+        return voucherService.restockSeckillVoucher(voucherId, count);
+    }
+}
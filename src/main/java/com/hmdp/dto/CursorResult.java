@@ -0,0 +1,18 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 游标分页结果，查询下一页时传入 cursor，cursor 为空表示没有下一页
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorResult {
+    private List<?> list;
+    private String cursor;
+}
@@ -0,0 +1,27 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 输入提示的一条候选
+ */
+@Data
+@AllArgsConstructor
+public class ShopSuggestion {
+    public static final String TYPE_SHOP = "shop";
+    public static final String TYPE_AREA = "area";
+
+    /**
+     * 提示文本：店铺名称或商圈
+     */
+    private String text;
+    /**
+     * 店铺名称时为评分、销量最高的同名店铺id，商圈时为空
+     */
+    private Long shopId;
+    /**
+     * shop、area
+     */
+    private String type;
+}
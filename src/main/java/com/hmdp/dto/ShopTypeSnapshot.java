@@ -0,0 +1,34 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 店铺类型的不可变快照，保存已序列化的响应体，查询时不需要访问 redis 或序列化
+ */
+@Getter
+public final class ShopTypeSnapshot {
+
+    /**
+     * redis 中的版本号，店铺类型变更时自增
+     */
+    private final long version;
+
+    private final List<ShopType> types;
+
+    /**
+     * Result.ok(types) 序列化后的 json
+     */
+    private final byte[] body;
+
+    private final String etag;
+
+    public ShopTypeSnapshot(long version, List<ShopType> types, byte[] body, String etag) {
+        this.version = version;
+        this.types = types;
+        this.body = body;
+        this.etag = etag;
+    }
+}
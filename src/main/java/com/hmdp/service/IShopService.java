@@ -17,4 +17,14 @@ public interface IShopService extends IService<Shop> {
 	Result queryById(Long id);
 
 	Result update(Shop shop);
+
+	Result saveShop(Shop shop);
+
+	Result incrementCounter(Long id, String field, int delta);
+
+	Result queryShopByType(Integer typeId, Integer current, String cursor, Double x, Double y);
+
+	Result queryShopByName(String name, String cursor);
+
+	Result suggest(String prefix);
 }
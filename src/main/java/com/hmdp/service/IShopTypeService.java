@@ -1,6 +1,7 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.utils.RedisConstants;
@@ -15,4 +16,10 @@ import com.hmdp.utils.RedisConstants;
  */
 public interface IShopTypeService extends IService<ShopType> {
 	Result queryTypeLists();
+
+	ShopTypeSnapshot getSnapshot();
+
+	void publishTypeChange();
+
+	void refreshSnapshot(long version);
 }
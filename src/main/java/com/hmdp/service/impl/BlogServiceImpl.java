@@ -1,11 +1,29 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.PageCursor;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+import static com.hmdp.utils.SystemConstants.MAX_PAGE_SIZE;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +35,108 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+	@Resource
+	private IUserService userService;
+
+	@Resource
+	private CacheClient cacheClient;
+
+	/**
+	 * 查询用户自己的博文，按发布时间倒序
+	 * 说明：传入 cursor 时为游标分页，游标为上一页最后一篇博文的id，返回 CursorResult；否则按页码分页。两种方式都不查询总数
+	 *
+	 * @param userId  用户id
+	 * @param current 页码
+	 * @param cursor  上一页返回的游标，第一页为空字符串
+	 * @return 博文列表
+	 */
+	@Override
+	public Result queryMyBlog(Long userId, Integer current, String cursor) {
+		if (!PageCursor.isCursorMode(cursor)) {
+			Page<Blog> page = query()
+					.eq("user_id", userId)
+					.page(new Page<>(current, MAX_PAGE_SIZE, false));
+			return Result.ok(page.getRecords());
+		}
+		Long lastId = null;
+		if (!PageCursor.isFirstPage(cursor)) {
+			try {
+				lastId = PageCursor.decode(cursor, 1)[0];
+			} catch (IllegalArgumentException e) {
+				return Result.fail("游标格式错误！");
+			}
+		}
+		// user_id 索引包含主键，按 (user_id, id) 定位到上一页的最后一篇
+		List<Blog> blogs = query()
+				.eq("user_id", userId)
+				.lt(lastId != null, "id", lastId)
+				.orderByDesc("id")
+				.last("LIMIT " + MAX_PAGE_SIZE)
+				.list();
+		String next = blogs.size() < MAX_PAGE_SIZE ? null : PageCursor.encode(blogs.get(blogs.size() - 1).getId());
+		return Result.ok(new CursorResult(blogs, next));
+	}
+
+	/**
+	 * 查询热门博文，按点赞数量倒序，点赞数量相同时按id倒序
+	 * 说明：传入 cursor 时为游标分页，游标为上一页最后一篇博文的点赞数量和id，返回 CursorResult；否则按页码分页。两种方式都不查询总数
+	 *
+	 * @param current 页码
+	 * @param cursor  上一页返回的游标，第一页为空字符串
+	 * @return 博文列表
+	 */
+	@Override
+	public Result queryHotBlog(Integer current, String cursor) {
+		List<Blog> blogs;
+		String next = null;
+		if (!PageCursor.isCursorMode(cursor)) {
+			blogs = query()
+					.orderByDesc("liked", "id")
+					.page(new Page<>(current, MAX_PAGE_SIZE, false))
+					.getRecords();
+		} else {
+			long[] last = null;
+			if (!PageCursor.isFirstPage(cursor)) {
+				try {
+					last = PageCursor.decode(cursor, 2);
+				} catch (IllegalArgumentException e) {
+					return Result.fail("游标格式错误！");
+				}
+			}
+			// liked 索引包含主键，(liked, id) < (上一页最后一篇) 直接在索引上定位
+			long liked = last == null ? 0 : last[0];
+			long id = last == null ? 0 : last[1];
+			blogs = query()
+					.and(last != null, w -> w.lt("liked", liked).or(o -> o.eq("liked", liked).lt("id", id)))
+					.orderByDesc("liked", "id")
+					.last("LIMIT " + MAX_PAGE_SIZE)
+					.list();
+			if (blogs.size() == MAX_PAGE_SIZE) {
+				Blog tail = blogs.get(blogs.size() - 1);
+				next = PageCursor.encode(tail.getLiked() == null ? 0 : tail.getLiked(), tail.getId());
+			}
+		}
+		fillAuthors(blogs);
+		return Result.ok(PageCursor.isCursorMode(cursor) ? new CursorResult(blogs, next) : blogs);
+	}
+
+	/**
+	 * 批量查询博文作者的昵称和头像
+	 */
+	private void fillAuthors(List<Blog> blogs) {
+		List<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toList());
+		Map<Long, UserDTO> users = cacheClient.queryBatchWithPassThrough(
+				CACHE_USER_KEY, userIds, UserDTO.class,
+				ids -> userService.listByIds(ids).stream()
+						.map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+						.collect(Collectors.toList()),
+				UserDTO::getId, CACHE_USER_TTL, TimeUnit.MINUTES);
+		blogs.forEach(blog -> {
+			UserDTO user = users.get(blog.getUserId());
+			if (user != null) {
+				blog.setName(user.getNickName());
+				blog.setIcon(user.getIcon());
+			}
+		});
+	}
 }
@@ -1,29 +1,57 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.CursorResult;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.hmdp.utils.BloomFilterRegistry;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRefresher;
+import com.hmdp.utils.CacheWarmer;
+import com.hmdp.utils.CounterField;
+import com.hmdp.utils.ExpiryPolicy;
+import com.hmdp.utils.LocalShopGeoIndex;
+import com.hmdp.utils.PageCursor;
 import com.hmdp.utils.RedisConstants;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopSearchIndex;
+import com.hmdp.utils.ShopSuggestTrie;
 import com.hmdp.utils.RedisData;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.*;
 
 /**
  * <p>
@@ -33,6 +61,7 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 闫博元
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
@@ -42,6 +71,77 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 	@Resource
 	private CacheClient cacheClient;
 
+	@Resource
+	private BloomFilterRegistry bloomFilterRegistry;
+
+	@Resource
+	private CacheWarmer cacheWarmer;
+
+	@Resource
+	private ExpiryPolicy expiryPolicy;
+
+	@Resource
+	private CacheRefresher cacheRefresher;
+
+	@Resource
+	private ShopGeoIndex shopGeoIndex;
+
+	@Resource
+	private LocalShopGeoIndex localShopGeoIndex;
+
+	@Resource
+	private ShopSearchIndex shopSearchIndex;
+
+	@Resource
+	private ShopSuggestTrie shopSuggestTrie;
+
+	/**
+	 * 附近店铺的查询来源：redis、local；redis 查询失败时使用本地索引
+	 */
+	@Value("${hmdp.shop-geo.source:redis}")
+	private String geoSource;
+
+	/**
+	 * 按距离分页的最大深度（跳过的数量 + 每页数量），超过后返回空页
+	 */
+	@Value("${hmdp.shop-geo.max-depth:1000}")
+	private int geoMaxDepth;
+
+	/**
+	 * 店铺详情使用 hash 缓存：静态字段一个字段，销量、评论数、评分为单独的计数器字段
+	 */
+	@Value("${hmdp.cache.shop.hash-mode:false}")
+	private boolean hashMode;
+
+	/**
+	 * hash 缓存中的计数器字段，字段名与数据库列名一致
+	 */
+	private static final List<CounterField<Shop>> SHOP_COUNTERS = Arrays.asList(
+			CounterField.of("sold", Shop::getSold, (shop, v) -> shop.setSold(v.intValue())),
+			CounterField.of("comments", Shop::getComments, (shop, v) -> shop.setComments(v.intValue())),
+			CounterField.of("score", Shop::getScore, (shop, v) -> shop.setScore(v.intValue())));
+
+	/**
+	 * 热点店铺数据开启本地缓存，减少 redis 访问和反序列化
+	 */
+	@PostConstruct
+	public void init() {
+		cacheClient.enableLocalCache(CACHE_SHOP_KEY, CACHE_SHOP_LOCAL_SIZE, CACHE_SHOP_LOCAL_TTL, TimeUnit.SECONDS);
+		// 店铺id布隆过滤器，拦截不存在的店铺id
+		Function<Long, List<Long>> idPageLoader = lastId -> listObjs(new QueryWrapper<Shop>().select("id")
+				.gt("id", lastId).orderByAsc("id").last("LIMIT " + BLOOM_FILTER_PAGE_SIZE), o -> ((Number) o).longValue());
+		bloomFilterRegistry.register(CACHE_SHOP_KEY, SHOP_BLOOM_EXPECTED_INSERTIONS, BLOOM_FILTER_FPP, idPageLoader);
+		if (hashMode) {
+			bloomFilterRegistry.register(CACHE_SHOP_HASH_KEY, SHOP_BLOOM_EXPECTED_INSERTIONS, BLOOM_FILTER_FPP, idPageLoader);
+		}
+		// 店铺数据量大，预热时集中写入，加大过期时间的抖动范围
+		expiryPolicy.registerBand(CACHE_SHOP_KEY, 0.8, 1.2);
+		// 店铺详情使用逻辑过期缓存，启动时预热
+		cacheWarmer.register(CACHE_SHOP_KEY,
+				(lastId, pageSize) -> query().gt("id", lastId).orderByAsc("id").last("LIMIT " + pageSize).list(),
+				Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+	}
+
 	/**
 	 * 根据商铺id查询商铺信息
 	 *
@@ -58,8 +158,14 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 		// Shop shop = queryWithPassMutex(id);
 
 		// 设计逻辑过期 - 解决缓存击穿
-		Shop shop = cacheClient
-				.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+		// Shop shop = cacheClient
+		//		.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+
+		// 逻辑过期 + 概率提前刷新 - 解决缓存击穿，热点数据没有过期窗口
+		// hash 缓存 - 计数器单独更新，计数器变化不会使缓存失效
+		Shop shop = hashMode
+				? cacheClient.queryWithHash(CACHE_SHOP_HASH_KEY, id, Shop.class, SHOP_COUNTERS, this::getById, 20L, TimeUnit.SECONDS)
+				: cacheClient.queryWithEarlyRefresh(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
 
 		if (null == shop) {
 			return Result.fail("店铺不存在！");
@@ -81,14 +187,286 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 		if (null == shop.getId()) {
 			return Result.fail("店铺id为空，请检查!");
 		}
-		String key = CACHE_SHOP_KEY + shop.getId();
+		// 坐标或类型变化时需要维护地理位置索引，先查询更新前的店铺
+		boolean locationChanged = shop.getTypeId() != null || shop.getX() != null || shop.getY() != null;
+		boolean textChanged = shop.getName() != null || shop.getArea() != null || shop.getAddress() != null;
+		Shop before = locationChanged ? getById(shop.getId()) : null;
 		// 1.更新数据库
 		updateById(shop);
-		// 2.删除缓存
-		stringRedisTemplate.delete(key);
+		// 事务提交后维护索引，回滚时索引不会出现未提交的数据
+		if (locationChanged || textChanged) {
+			Shop after = getById(shop.getId());
+			afterCommit(() -> {
+				if (locationChanged) {
+					shopGeoIndex.update(before, after);
+					localShopGeoIndex.put(after);
+				}
+				if (textChanged) {
+					shopSearchIndex.put(after);
+				}
+			});
+		}
+		// 2.事务提交后异步重建逻辑过期缓存，同时通知所有节点清除本地缓存；直接删除会让逻辑过期查询认为店铺不存在
+		cacheRefresher.refreshAfterCommit(CACHE_SHOP_KEY, shop.getId(), this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+		if (hashMode) {
+			// hash 缓存不存在时会查询数据库，直接删除
+			cacheRefresher.deleteAfterCommit(CACHE_SHOP_HASH_KEY + shop.getId());
+		}
 		return Result.ok();
 	}
 
+	/**
+	 * 根据商铺类型分页查询商铺信息，传入坐标时按距离由近到远排序
+	 * 说明：传入 cursor 时为游标分页，返回 CursorResult；否则按页码分页，只返回当前页的店铺。两种方式都不查询总数
+	 *
+	 * @param typeId  商铺类型
+	 * @param current 页码
+	 * @param cursor  上一页返回的游标，第一页为空字符串
+	 * @param x       经度
+	 * @param y       纬度
+	 * @return 商铺列表
+	 */
+	@Override
+	public Result queryShopByType(Integer typeId, Integer current, String cursor, Double x, Double y) {
+		boolean cursorMode = PageCursor.isCursorMode(cursor);
+		long after = 0;
+		if (!PageCursor.isFirstPage(cursor)) {
+			try {
+				after = PageCursor.decode(cursor, 1)[0];
+			} catch (IllegalArgumentException e) {
+				return Result.fail("游标格式错误！");
+			}
+		}
+
+		// 1.没有坐标，按数据库分页查询；游标为上一页最后一个店铺id，利用 type_id 索引定位
+		if (x == null || y == null) {
+			if (!cursorMode) {
+				Page<Shop> page = query()
+						.eq("type_id", typeId)
+						.page(new Page<>(current, DEFAULT_PAGE_SIZE, false));
+				return Result.ok(page.getRecords());
+			}
+			List<Shop> shops = query()
+					.eq("type_id", typeId)
+					.gt("id", after)
+					.orderByAsc("id")
+					.last("LIMIT " + DEFAULT_PAGE_SIZE)
+					.list();
+			String next = shops.size() < DEFAULT_PAGE_SIZE ? null : PageCursor.encode(shops.get(shops.size() - 1).getId());
+			return Result.ok(new CursorResult(shops, next));
+		}
+
+		// 2.按距离查询当前页的店铺id；游标为已返回的数量，查询范围受半径和最大深度限制
+		long from = cursorMode ? after : (current - 1L) * DEFAULT_PAGE_SIZE;
+		if (from < 0) {
+			return Result.fail("分页参数错误！");
+		}
+		Map<Long, Double> distances = from + DEFAULT_PAGE_SIZE > geoMaxDepth
+				? Collections.emptyMap()
+				: searchNearby(typeId.longValue(), x, y, (int) from);
+		if (distances.isEmpty()) {
+			return Result.ok(cursorMode ? new CursorResult(Collections.emptyList(), null) : Collections.emptyList());
+		}
+
+		// 3.一次批量查询店铺
+		Map<Long, Shop> shops = loadShops(distances.keySet());
+
+		// 4.按距离排序并填充距离，缓存中的店铺是共享对象，复制后再填充
+		List<Shop> result = new ArrayList<>(distances.size());
+		distances.forEach((id, distance) -> {
+			Shop shop = shops.get(id);
+			if (shop != null) {
+				result.add(BeanUtil.copyProperties(shop, Shop.class).setDistance(distance));
+			}
+		});
+		if (cursorMode) {
+			String next = distances.size() < DEFAULT_PAGE_SIZE ? null : PageCursor.encode(from + distances.size());
+			return Result.ok(new CursorResult(result, next));
+		}
+		return Result.ok(result);
+	}
+
+	/**
+	 * 根据关键字搜索商铺，匹配名称、商圈、地址，按游标分页
+	 *
+	 * @param name   关键字
+	 * @param cursor 上一页返回的游标，第一页为空
+	 * @return 商铺列表和下一页的游标
+	 */
+	@Override
+	public Result queryShopByName(String name, String cursor) {
+		// 1.索引未构建完成或没有关键字时，按店铺id倒序查询数据库，游标只有id一个字段，与索引的 (排序值, id) 游标区分；
+		// 翻页期间索引构建完成时，数据库游标继续查询数据库，不会被索引当作排序值为0的游标而返回空页
+		boolean dbCursor = !PageCursor.isFirstPage(cursor) && PageCursor.lengthOf(cursor) == 1;
+		if (StringUtils.isBlank(name) || !shopSearchIndex.isReady() || dbCursor) {
+			Long lastId = null;
+			try {
+				if (dbCursor) {
+					lastId = PageCursor.decode(cursor, 1)[0];
+				} else if (!PageCursor.isFirstPage(cursor)) {
+					// 索引的游标无法换算为数据库的位置，校验后从第一页开始查询
+					PageCursor.decode(cursor, 2);
+				}
+			} catch (IllegalArgumentException e) {
+				return Result.fail("游标格式错误！");
+			}
+			List<Shop> shops = query()
+					.like(StringUtils.isNotBlank(name), "name", name)
+					.lt(lastId != null, "id", lastId)
+					.orderByDesc("id")
+					.last("LIMIT " + MAX_PAGE_SIZE)
+					.list();
+			String next = shops.size() < MAX_PAGE_SIZE ? null : PageCursor.encode(shops.get(shops.size() - 1).getId());
+			return Result.ok(new CursorResult(shops, next));
+		}
+
+		// 2.倒排索引查询当前页的店铺id
+		CursorResult page;
+		try {
+			page = shopSearchIndex.search(name, cursor, MAX_PAGE_SIZE);
+		} catch (IllegalArgumentException e) {
+			return Result.fail("游标格式错误！");
+		}
+		@SuppressWarnings("unchecked")
+		List<Long> ids = (List<Long>) page.getList();
+		if (ids.isEmpty()) {
+			return Result.ok(page);
+		}
+
+		// 3.一次批量查询店铺，按索引的排序返回
+		Map<Long, Shop> shops = loadShops(ids);
+		List<Shop> result = new ArrayList<>(ids.size());
+		ids.forEach(id -> {
+			Shop shop = shops.get(id);
+			if (shop != null) {
+				result.add(shop);
+			}
+		});
+		page.setList(result);
+		return Result.ok(page);
+	}
+
+	/**
+	 * 店铺名称、商圈的输入提示，不访问数据库
+	 *
+	 * @param prefix 输入的前缀
+	 * @return 按评分、销量降序排列的候选
+	 */
+	@Override
+	public Result suggest(String prefix) {
+		return Result.ok(shopSuggestTrie.suggest(prefix, SHOP_SUGGEST_SIZE));
+	}
+
+	/**
+	 * 一次批量查询店铺，未预热的店铺从数据库补齐
+	 */
+	private Map<Long, Shop> loadShops(Collection<Long> ids) {
+		Map<Long, Shop> shops = new HashMap<>(cacheClient.queryBatchWithLogicalExpire(CACHE_SHOP_KEY, ids,
+				Shop.class, this::listByIds, Shop::getId, CACHE_SHOP_TTL, TimeUnit.MINUTES));
+		List<Long> missIds = new ArrayList<>();
+		ids.forEach(id -> {
+			if (!shops.containsKey(id)) {
+				missIds.add(id);
+			}
+		});
+		if (!missIds.isEmpty()) {
+			listByIds(missIds).forEach(shop -> shops.put(shop.getId(), shop));
+		}
+		return shops;
+	}
+
+	/**
+	 * 按距离查询一页店铺id，本地索引构建完成后可以代替 redis 查询
+	 */
+	private Map<Long, Double> searchNearby(Long typeId, double x, double y, int from) {
+		if ("local".equals(geoSource) && localShopGeoIndex.isReady()) {
+			return localShopGeoIndex.search(typeId, x, y, SHOP_GEO_RADIUS, from, DEFAULT_PAGE_SIZE);
+		}
+		try {
+			return shopGeoIndex.search(typeId, x, y, SHOP_GEO_RADIUS, from, DEFAULT_PAGE_SIZE);
+		} catch (Exception e) {
+			if (!localShopGeoIndex.isReady()) {
+				throw e;
+			}
+			log.warn("redis 查询附近店铺失败，使用本地索引", e);
+			return localShopGeoIndex.search(typeId, x, y, SHOP_GEO_RADIUS, from, DEFAULT_PAGE_SIZE);
+		}
+	}
+
+	/**
+	 * 更新店铺的计数器：销量、评论数、评分
+	 *
+	 * @param id    店铺id
+	 * @param field 计数器字段：sold、comments、score
+	 * @param delta 增量
+	 * @return Result
+	 */
+	@Override
+	public Result incrementCounter(Long id, String field, int delta) {
+		if (SHOP_COUNTERS.stream().noneMatch(counter -> counter.getName().equals(field))) {
+			return Result.fail("不支持的计数器：" + field);
+		}
+		// 1.更新数据库
+		boolean success = update().setSql(field + " = " + field + " + " + delta).eq("id", id).update();
+		if (!success) {
+			return Result.fail("店铺不存在！");
+		}
+		// 2.hash 缓存只自增计数器字段，不会使缓存失效，数据库已提交，同时递增计数器版本号让正在进行的加载放弃写入；
+		// string 缓存需要重建整个店铺
+		if (hashMode) {
+			cacheClient.incrementField(CACHE_SHOP_HASH_KEY + id, field, delta);
+		} else {
+			cacheRefresher.refreshAfterCommit(CACHE_SHOP_KEY, id, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+		}
+		return Result.ok();
+	}
+
+	/**
+	 * 新增商铺信息
+	 *
+	 * @param shop 商铺数据
+	 * @return 商铺id
+	 */
+	@Override
+	public Result saveShop(Shop shop) {
+		// 写入数据库
+		save(shop);
+		// 写入布隆过滤器
+		bloomFilterRegistry.put(CACHE_SHOP_KEY, shop.getId());
+		bloomFilterRegistry.put(CACHE_SHOP_HASH_KEY, shop.getId());
+		// 事务提交后写入地理位置索引、搜索索引
+		afterCommit(() -> {
+			shopGeoIndex.add(shop);
+			localShopGeoIndex.put(shop);
+			shopSearchIndex.put(shop);
+		});
+		// 返回店铺id
+		return Result.ok(shop.getId());
+	}
+
+	/**
+	 * 事务提交后执行，没有事务时立即执行；索引维护失败只记录日志，不影响已提交的写入，由全量重建修正
+	 */
+	private static void afterCommit(Runnable task) {
+		Runnable guarded = () -> {
+			try {
+				task.run();
+			} catch (Exception e) {
+				log.error("事务提交后维护店铺索引失败", e);
+			}
+		};
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					guarded.run();
+				}
+			});
+		} else {
+			guarded.run();
+		}
+	}
+
 	// 线程池
 	// private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
 
@@ -1,19 +1,27 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_VERSION_KEY;
 
 
 /**
@@ -24,33 +32,111 @@ import java.util.List;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
 	@Resource
 	private StringRedisTemplate stringRedisTemplate;
 
+	@Resource
+	private ObjectMapper objectMapper;
+
 	/**
-	 * 使用 redis 缓存店铺类型信息
+	 * 店铺类型快照，数据很少变化，整张表保存在本地内存中
+	 */
+	private volatile ShopTypeSnapshot snapshot;
+
+	/**
+	 * 使用本地快照查询店铺类型信息
 	 *
 	 * @return
 	 */
 	@Override
 	public Result queryTypeLists() {
-		String key = "shopType";
-		String shopTypeJson = stringRedisTemplate.opsForValue().get(key);
-		// 缓存命中，直接返回数据给前端
-		if (StringUtils.isNotBlank(shopTypeJson)) {
-			List<ShopType> shopTypes = JSONUtil.toList(shopTypeJson, ShopType.class);
-			return Result.ok(shopTypes);
+		return Result.ok(getSnapshot().getTypes());
+	}
+
+	/**
+	 * 获取店铺类型快照，第一次访问时加载
+	 *
+	 * @return ShopTypeSnapshot
+	 */
+	@Override
+	public ShopTypeSnapshot getSnapshot() {
+		ShopTypeSnapshot current = snapshot;
+		if (current != null) {
+			return current;
 		}
-		// 缓存未命中
-		List<ShopType> shopTypes = query().orderByAsc("sort").list();
-		// 校验
-		if (null == shopTypes) {
-			Result.fail("查询店铺类型数据不存在!");
+		synchronized (this) {
+			if (snapshot == null) {
+				snapshot = loadSnapshot(readVersion());
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * 店铺类型变更后调用：版本号自增，并通知所有节点刷新快照
+	 */
+	@Override
+	public void publishTypeChange() {
+		Long version = stringRedisTemplate.opsForValue().increment(SHOP_TYPE_VERSION_KEY);
+		stringRedisTemplate.convertAndSend(SHOP_TYPE_CHANNEL, String.valueOf(version));
+	}
+
+	/**
+	 * 刷新快照，由店铺类型变更消息的监听器调用
+	 * 说明：版本号与当前快照不同就重新加载，不要求递增：redis 清空后版本号从头开始，新的版本号可能小于当前快照；
+	 * 乱序到达的旧消息会重新加载一次，加载的始终是数据库中的最新数据，版本号由定时检查修正
+	 *
+	 * @param version 新的版本号
+	 */
+	@Override
+	public synchronized void refreshSnapshot(long version) {
+		ShopTypeSnapshot current = snapshot;
+		if (current != null && current.getVersion() == version) {
+			return;
+		}
+		snapshot = loadSnapshot(version);
+		log.info("店铺类型快照已刷新，版本：{}", version);
+	}
+
+	/**
+	 * 定时比较 redis 中的版本号，补偿丢失的变更消息
+	 */
+	@Scheduled(initialDelay = 30000, fixedDelay = 30000)
+	public void checkVersion() {
+		if (snapshot == null) {
+			return;
+		}
+		try {
+			long version = readVersion();
+			if (version != snapshot.getVersion()) {
+				refreshSnapshot(version);
+			}
+		} catch (Exception e) {
+			log.warn("检查店铺类型版本失败", e);
+		}
+	}
+
+	private long readVersion() {
+		String version = stringRedisTemplate.opsForValue().get(SHOP_TYPE_VERSION_KEY);
+		return StringUtils.isBlank(version) ? 0 : Long.parseLong(version);
+	}
+
+	private ShopTypeSnapshot loadSnapshot(long version) {
+		List<ShopType> shopTypes = Collections.unmodifiableList(query().orderByAsc("sort").list());
+		byte[] body;
+		try {
+			body = objectMapper.writeValueAsBytes(Result.ok(shopTypes));
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("店铺类型序列化失败", e);
 		}
-		stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shopTypes));
-		return Result.ok(shopTypes);
+		// 版本号 + 内容校验和，不同节点加载的内容相同时 ETag 相同
+		CRC32 crc = new CRC32();
+		crc.update(body);
+		String etag = "\"" + version + "-" + Long.toHexString(crc.getValue()) + "\"";
+		return new ShopTypeSnapshot(version, shopTypes, body, etag);
 	}
 }
@@ -11,12 +11,15 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.utils.BloomFilterRegistry;
 import com.hmdp.utils.RegexUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 
@@ -25,7 +28,7 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
-import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
+import static com.hmdp.utils.SystemConstants.*;
 
 /**
  * <p>
@@ -42,6 +45,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 	@Resource
 	private StringRedisTemplate stringRedisTemplate;
 
+	@Resource
+	private BloomFilterRegistry bloomFilterRegistry;
+
+	/**
+	 * 用户id布隆过滤器，拦截不存在的用户id
+	 */
+	@PostConstruct
+	public void init() {
+		bloomFilterRegistry.register(CACHE_USER_KEY, USER_BLOOM_EXPECTED_INSERTIONS, BLOOM_FILTER_FPP,
+				lastId -> listObjs(new QueryWrapper<User>().select("id").gt("id", lastId).orderByAsc("id")
+						.last("LIMIT " + BLOOM_FILTER_PAGE_SIZE), o -> ((Number) o).longValue()));
+	}
+
 	/**
 	 * 生成验证码
 	 *
@@ -126,6 +142,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 		User user = User.builder().phone(phone).nickName(USER_NICK_NAME_PREFIX + RandomUtil.randomNumbers(10)).build();
 		// 保存
 		save(user);
+		// 写入布隆过滤器
+		bloomFilterRegistry.put(CACHE_USER_KEY, user.getId());
 		return user;
 	}
 }
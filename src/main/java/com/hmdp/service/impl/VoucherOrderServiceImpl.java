@@ -1,10 +1,60 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillStockReserver;
+import com.hmdp.utils.SoldOutRegistry;
+import com.hmdp.utils.StockWriteCoalescer;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_DEAD_LETTER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
+import static com.hmdp.utils.SeckillStockReserver.*;
 
 /**
  * <p>
@@ -14,7 +64,450 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
+	@Resource
+	private ISeckillVoucherService seckillVoucherService;
+
+	@Resource
+	private SeckillStockReserver seckillStockReserver;
+
+	@Resource
+	private SoldOutRegistry soldOutRegistry;
+
+	@Resource
+	private RedisIdWorker redisIdWorker;
+
+	@Resource
+	private StringRedisTemplate stringRedisTemplate;
+
+	@Resource
+	private TransactionTemplate transactionTemplate;
+
+	/**
+	 * 消费订单 stream 的线程数，阻塞读取时每个线程占用一个 redis 连接
+	 */
+	@Value("${hmdp.seckill.order.consumers:2}")
+	private int consumers;
+
+	/**
+	 * 每次 XREADGROUP 读取的订单数量
+	 */
+	@Value("${hmdp.seckill.order.batch-size:100}")
+	private int batchSize;
+
+	/**
+	 * 没有新订单时 XREADGROUP 的阻塞时间，单位毫秒
+	 */
+	@Value("${hmdp.seckill.order.block-millis:2000}")
+	private long blockMillis;
+
+	/**
+	 * 消费者名称前缀，为空时使用主机名；重启后名称不变时启动即重放自己的 pending list，名称变化后由 claimIdleOrders 认领
+	 */
+	@Value("${hmdp.seckill.order.consumer-name:}")
+	private String consumerName;
+
+	/**
+	 * pending list 中空闲超过该时间的订单由其他消费者认领，单位毫秒
+	 */
+	@Value("${hmdp.seckill.order.claim-idle-millis:60000}")
+	private long claimIdleMillis;
+
+	/**
+	 * 同一个秒杀券的订单累积的最长时间，单位毫秒
+	 */
+	@Value("${hmdp.seckill.order.stock-window-millis:5}")
+	private long stockWindowMillis;
+
+	/**
+	 * 同一个秒杀券一次写入的最大订单数量
+	 */
+	@Value("${hmdp.seckill.order.stock-max-batch:500}")
+	private int stockMaxBatch;
+
+	private StockWriteCoalescer stockWriteCoalescer;
+
+	private ExecutorService orderExecutor;
+
+	/**
+	 * 认领空闲订单时使用的消费者名称，即当前节点的第一个消费者
+	 */
+	private String claimer;
+
+	private volatile boolean running = true;
+
+	@PostConstruct
+	public void init() {
+		stockWriteCoalescer = new StockWriteCoalescer(this::writeOrders, stockWindowMillis, stockMaxBatch);
+		createGroup();
+		String name = StrUtil.isBlank(consumerName) ? localHostName() : consumerName;
+		claimer = name + "-1";
+		AtomicInteger threadIndex = new AtomicInteger();
+		orderExecutor = Executors.newFixedThreadPool(consumers, r -> {
+			Thread thread = new Thread(r, "seckill-order-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		for (int i = 1; i <= consumers; i++) {
+			String consumer = name + "-" + i;
+			orderExecutor.execute(() -> handleOrders(consumer));
+		}
+	}
+
+	/**
+	 * 秒杀下单：redis 中判断资格、预扣库存并发布订单后立即返回订单id，订单和库存由后台线程批量写入数据库
+	 *
+	 * @param voucherId 秒杀券id
+	 * @return 订单id
+	 */
+	@Override
+	public Result seckillVoucher(Long voucherId) {
+		// 1.当前节点已知售罄时直接返回，不访问 redis
+		if (soldOutRegistry.isSoldOut(voucherId)) {
+			return Result.fail("库存不足！");
+		}
+		Long userId = UserHolder.getUser().getId();
+		long orderId = redisIdWorker.nextId("order");
+		// 2.判断资格、预扣库存并发布订单
+		int result = seckillStockReserver.reserve(voucherId, userId, orderId);
+		if (result == NOT_LOADED) {
+			// redis 中没有秒杀券，从数据库加载后重试
+			SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+			if (voucher == null) {
+				return Result.fail("秒杀券不存在！");
+			}
+			seckillStockReserver.load(voucher);
+			result = seckillStockReserver.reserve(voucherId, userId, orderId);
+		}
+		switch (result) {
+			case SUCCESS:
+				// 3.返回订单id
+				return Result.ok(orderId);
+			case NOT_STARTED:
+				return Result.fail("秒杀尚未开始！");
+			case ENDED:
+				return Result.fail("秒杀已经结束！");
+			case SOLD_OUT:
+				// 标记售罄并通知其他节点
+				soldOutRegistry.markSoldOut(voucherId);
+				return Result.fail("库存不足！");
+			case DUPLICATE:
+				return Result.fail("不能重复下单！");
+			default:
+				return Result.fail("秒杀券不存在！");
+		}
+	}
+
+	/**
+	 * 后台线程：启动时先重放自己的 pending list，之后用 XREADGROUP 批量读取新订单，交给组提交写入数据库；
+	 * 写入失败的订单留在 pending list，等待一段时间后从头重放
+	 */
+	private void handleOrders(String consumer) {
+		// pending list 的读取位置，为 null 时读取新订单
+		String pendingFrom = "0";
+		while (running) {
+			try {
+				boolean replay = pendingFrom != null;
+				List<MapRecord<String, Object, Object>> records = replay
+						? readOrders(consumer, StreamReadOptions.empty().count(batchSize), ReadOffset.from(pendingFrom))
+						: readOrders(consumer, StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis)),
+						ReadOffset.lastConsumed());
+				if (records == null || records.isEmpty()) {
+					pendingFrom = null;
+					continue;
+				}
+				boolean written = handleBatch(records);
+				if (replay) {
+					// 重放时跳过仍然写入失败的订单，继续读取之后的 pending 订单
+					pendingFrom = records.get(records.size() - 1).getId().getValue();
+				} else if (!written) {
+					pendingFrom = "0";
+					TimeUnit.SECONDS.sleep(1);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				if (!running) {
+					return;
+				}
+				log.error("读取订单 stream 失败：{}", consumer, e);
+				pendingFrom = "0";
+				try {
+					TimeUnit.SECONDS.sleep(1);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				// redis 数据丢失后重新创建消费者组
+				createGroup();
+			}
+		}
+	}
+
+	/**
+	 * 定时认领空闲超时的 pending 订单
+	 * 说明：
+	 * 1.消费者所在节点下线、或者重启后主机名变化（容器重新部署），它的 pending list 不会再被重放，
+	 * 这些订单已经占用了 redis 中的库存和下单资格，必须写入数据库
+	 * 2.每次从最早的订单开始检查一批，XCLAIM 只转移空闲时间仍然超过阈值的订单，正在被原消费者重放的订单不会被抢走
+	 * 3.认领后转到当前节点的消费者名下立即写入；写入失败的订单留在当前节点名下，空闲超时后再次被认领
+	 */
+	@Scheduled(initialDelayString = "${hmdp.seckill.order.claim-interval:30000}",
+			fixedDelayString = "${hmdp.seckill.order.claim-interval:30000}")
+	public void claimIdleOrders() {
+		if (!running) {
+			return;
+		}
+		try {
+			PendingMessages pending = stringRedisTemplate.opsForStream()
+					.pending(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, Range.unbounded(), batchSize);
+			List<RecordId> idleIds = new ArrayList<>();
+			for (PendingMessage message : pending) {
+				if (message.getElapsedTimeSinceLastDelivery().toMillis() >= claimIdleMillis) {
+					idleIds.add(message.getId());
+				}
+			}
+			if (idleIds.isEmpty()) {
+				return;
+			}
+			List<MapRecord<String, Object, Object>> records = claimOrders(idleIds);
+			if (records.isEmpty()) {
+				return;
+			}
+			log.warn("认领空闲超过{}ms的 pending 订单{}条", claimIdleMillis, records.size());
+			handleBatch(records);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			log.error("认领 pending 订单失败", e);
+		}
+	}
+
+	/**
+	 * XCLAIM 把空闲超时的订单转到当前节点的消费者名下
+	 */
+	private List<MapRecord<String, Object, Object>> claimOrders(List<RecordId> recordIds) {
+		List<ByteRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection ->
+				connection.streamCommands().xClaim(raw(SECKILL_ORDER_STREAM_KEY), SECKILL_ORDER_GROUP, claimer,
+						Duration.ofMillis(claimIdleMillis), recordIds.toArray(new RecordId[0])));
+		List<MapRecord<String, Object, Object>> records = new ArrayList<>();
+		if (claimed == null) {
+			return records;
+		}
+		for (ByteRecord record : claimed) {
+			Map<Object, Object> value = new HashMap<>(8);
+			record.getValue().forEach((k, v) -> value.put(
+					new String(k, StandardCharsets.UTF_8), new String(v, StandardCharsets.UTF_8)));
+			records.add(StreamRecords.newRecord().in(SECKILL_ORDER_STREAM_KEY).withId(record.getId()).ofMap(value));
+		}
+		return records;
+	}
+
+	/**
+	 * XREADGROUP 读取订单 stream
+	 * 说明：read 的 StreamOffset 参数是泛型可变参数，只有一个 stream，数组创建是安全的
+	 */
+	@SuppressWarnings("unchecked")
+	private List<MapRecord<String, Object, Object>> readOrders(String consumer, StreamReadOptions options, ReadOffset offset) {
+		return stringRedisTemplate.opsForStream().read(Consumer.from(SECKILL_ORDER_GROUP, consumer), options,
+				StreamOffset.create(SECKILL_ORDER_STREAM_KEY, offset));
+	}
+
+	/**
+	 * 把一批订单交给组提交写入，每个订单写入完成后 ACK；写入异常的订单留在 pending list；
+	 * 数据库库存不足的订单已经在 redis 中占用了资格和库存，写入死信 stream 等待补偿后再 ACK
+	 *
+	 * @return 是否全部写入
+	 */
+	private boolean handleBatch(List<MapRecord<String, Object, Object>> records) throws InterruptedException {
+		List<VoucherOrder> orders = new ArrayList<>(records.size());
+		List<RecordId> recordIds = new ArrayList<>(records.size());
+		List<RecordId> malformed = new ArrayList<>();
+		for (MapRecord<String, Object, Object> record : records) {
+			try {
+				orders.add(toOrder(record.getValue()));
+				recordIds.add(record.getId());
+			} catch (Exception e) {
+				log.error("订单消息格式错误，丢弃：{}", record, e);
+				malformed.add(record.getId());
+			}
+		}
+		acknowledge(malformed);
+		List<CompletableFuture<Integer>> futures = new ArrayList<>(orders.size());
+		for (VoucherOrder order : orders) {
+			futures.add(stockWriteCoalescer.submit(order));
+		}
+		List<RecordId> written = new ArrayList<>(orders.size());
+		List<VoucherOrder> rejected = new ArrayList<>();
+		List<RecordId> rejectedIds = new ArrayList<>();
+		for (int i = 0; i < orders.size(); i++) {
+			try {
+				int result = futures.get(i).get();
+				if (result == StockWriteCoalescer.SOLD_OUT) {
+					log.error("数据库库存不足，订单未写入，转入死信 stream：{}", orders.get(i));
+					rejected.add(orders.get(i));
+					rejectedIds.add(recordIds.get(i));
+					continue;
+				}
+				if (result == StockWriteCoalescer.DUPLICATE) {
+					log.warn("用户重复下单：{}", orders.get(i));
+				}
+				written.add(recordIds.get(i));
+			} catch (ExecutionException e) {
+				log.error("订单写入失败，保留在 pending list：{}", orders.get(i));
+			}
+		}
+		if (!rejected.isEmpty()) {
+			try {
+				deadLetter(rejected);
+				written.addAll(rejectedIds);
+			} catch (Exception e) {
+				log.error("写入死信 stream 失败，保留在 pending list：{}", rejected, e);
+			}
+		}
+		acknowledge(written);
+		return written.size() == orders.size();
+	}
+
+	/**
+	 * 组提交的写入：同一个事务中用一条条件 UPDATE 扣减本批订单的数量，所有订单一条 INSERT；
+	 * 库存不足时锁定库存行读取剩余库存，按到达顺序接受前面的订单，只有超出库存的订单失败
+	 * 说明：(user_id, voucher_id) 唯一索引兜底一人一单，其他节点并发写入同一用户的订单时 INSERT 违反唯一约束，
+	 * 整批回滚后留在 pending list，重放时查询到已有订单，按重复订单处理
+	 */
+	private int[] writeOrders(Long voucherId, List<VoucherOrder> orders) {
+		int[] results = new int[orders.size()];
+		transactionTemplate.executeWithoutResult(status -> {
+			// 1.一人一单，重复投递的订单和 redis 数据丢失后重新加载的重复订单以数据库为准，查询使用 (user_id, voucher_id) 唯一索引
+			Set<Long> userIds = new HashSet<>();
+			for (VoucherOrder order : orders) {
+				userIds.add(order.getUserId());
+			}
+			Set<Long> ordered = new HashSet<>();
+			for (VoucherOrder exists : query().select("user_id")
+					.eq("voucher_id", voucherId).in("user_id", userIds).list()) {
+				ordered.add(exists.getUserId());
+			}
+			List<Integer> candidates = new ArrayList<>(orders.size());
+			for (int i = 0; i < orders.size(); i++) {
+				if (ordered.add(orders.get(i).getUserId())) {
+					candidates.add(i);
+				} else {
+					results[i] = StockWriteCoalescer.DUPLICATE;
+				}
+			}
+			if (candidates.isEmpty()) {
+				return;
+			}
+			// 2.一条条件 UPDATE 扣减本批订单的数量
+			int count = candidates.size();
+			int granted = count;
+			boolean success = seckillVoucherService.update()
+					.setSql("stock = stock - " + count)
+					.eq("voucher_id", voucherId)
+					.ge("stock", count)
+					.update();
+			if (!success) {
+				// 库存不足，锁定库存行读取剩余库存，只接受剩余库存数量的订单
+				SeckillVoucher voucher = seckillVoucherService.query()
+						.select("stock").eq("voucher_id", voucherId).last("FOR UPDATE").one();
+				granted = voucher == null ? 0 : Math.max(0, Math.min(voucher.getStock(), count));
+				if (granted > 0) {
+					seckillVoucherService.update()
+							.setSql("stock = stock - " + granted)
+							.eq("voucher_id", voucherId)
+							.update();
+				}
+				for (int i = granted; i < count; i++) {
+					results[candidates.get(i)] = StockWriteCoalescer.SOLD_OUT;
+				}
+			}
+			// 3.一条 INSERT 保存接受的订单
+			if (granted > 0) {
+				List<VoucherOrder> accepted = new ArrayList<>(granted);
+				for (int i = 0; i < granted; i++) {
+					accepted.add(orders.get(candidates.get(i)));
+				}
+				getBaseMapper().insertBatch(accepted);
+			}
+		});
+		return results;
+	}
+
+	private static VoucherOrder toOrder(Map<Object, Object> value) {
+		return new VoucherOrder()
+				.setId(Long.valueOf((String) value.get("id")))
+				.setUserId(Long.valueOf((String) value.get("userId")))
+				.setVoucherId(Long.valueOf((String) value.get("voucherId")));
+	}
+
+	/**
+	 * 数据库库存不足而未写入的订单写入死信 stream，字段与订单 stream 相同，另加拒绝原因，
+	 * 由人工或补偿任务退还 redis 中的库存和下单资格
+	 */
+	private void deadLetter(List<VoucherOrder> orders) {
+		stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			for (VoucherOrder order : orders) {
+				Map<byte[], byte[]> fields = new HashMap<>(8);
+				fields.put(raw("id"), raw(String.valueOf(order.getId())));
+				fields.put(raw("userId"), raw(String.valueOf(order.getUserId())));
+				fields.put(raw("voucherId"), raw(String.valueOf(order.getVoucherId())));
+				fields.put(raw("reason"), raw("SOLD_OUT"));
+				connection.xAdd(raw(SECKILL_ORDER_DEAD_LETTER_KEY), fields);
+			}
+			return null;
+		});
+	}
+
+	private static byte[] raw(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * ACK 后从 stream 中删除，stream 只保留未写入的订单
+	 */
+	private void acknowledge(List<RecordId> recordIds) {
+		if (recordIds.isEmpty()) {
+			return;
+		}
+		RecordId[] ids = recordIds.toArray(new RecordId[0]);
+		stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM_KEY, SECKILL_ORDER_GROUP, ids);
+		stringRedisTemplate.opsForStream().delete(SECKILL_ORDER_STREAM_KEY, ids);
+	}
+
+	/**
+	 * 创建消费者组，stream 不存在时一起创建；消费者组已经存在时忽略
+	 */
+	private void createGroup() {
+		try {
+			stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.xGroupCreate(
+					SECKILL_ORDER_STREAM_KEY.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP,
+					ReadOffset.from("0"), true));
+		} catch (Exception e) {
+			if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")) {
+				log.error("创建订单 stream 消费者组失败", e);
+			}
+		}
+	}
+
+	private static String localHostName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch (Exception e) {
+			return "hmdp";
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		// 正在写入的批次完成后退出，未 ACK 的订单在下次启动时重放
+		running = false;
+		orderExecutor.shutdown();
+		orderExecutor.awaitTermination(blockMillis + 10_000, TimeUnit.MILLISECONDS);
+		stockWriteCoalescer.shutdown();
+	}
 }
@@ -7,8 +7,12 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillStockReserver;
+import com.hmdp.utils.SoldOutRegistry;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
@@ -27,6 +31,12 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private ISeckillVoucherService seckillVoucherService;
 
+    @Resource
+    private SeckillStockReserver seckillStockReserver;
+
+    @Resource
+    private SoldOutRegistry soldOutRegistry;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -47,5 +57,37 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 事务提交后写入 redis，秒杀下单时在 redis 中判断资格和预扣库存
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                seckillStockReserver.save(seckillVoucher);
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public Result restockSeckillVoucher(Long voucherId, Integer count) {
+        if (count == null || count <= 0) {
+            return Result.fail("补充的库存必须大于0！");
+        }
+        // 增加数据库库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + count)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (!success) {
+            return Result.fail("秒杀券不存在！");
+        }
+        // 事务提交后增加 redis 库存，清除所有节点的售罄标记
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                seckillStockReserver.restock(voucherId, count);
+                soldOutRegistry.clear(voucherId);
+            }
+        });
+        return Result.ok();
     }
 }
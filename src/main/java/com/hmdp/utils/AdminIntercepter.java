@@ -0,0 +1,45 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Set;
+
+/**
+ * 管理端拦截器
+ */
+public class AdminIntercepter implements HandlerInterceptor {
+
+	// 当前类不是 Spring 管理的，无法进行依赖注入，通过构造函数注入
+	private final Set<Long> adminUserIds;
+
+	public AdminIntercepter(Set<Long> adminUserIds) {
+		this.adminUserIds = adminUserIds;
+	}
+
+	/**
+	 * 管理员校验
+	 * 说明：只放行配置的管理员用户，未配置管理员时所有管理端请求都返回403
+	 *
+	 * @param request	请求
+	 * @param response	响应
+	 * @param handler	handler
+	 * @return
+	 * @throws Exception
+	 */
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+		UserDTO user = UserHolder.getUser();
+		if (user == null) {
+			response.setStatus(401);
+			return false;
+		}
+		if (!adminUserIds.contains(user.getId())) {
+			response.setStatus(403);
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,262 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑二进制编解码器
+ * 格式：魔数(1) + 版本(1) + 逻辑过期时间戳(8) + 重建耗时(4) + 实体字段
+ * 版本1没有重建耗时字段，仍然可以解码
+ * 说明：逻辑过期时间在固定位置，不必解码实体即可判断是否过期；只支持注册了 BinarySerializer 的类型
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class BinaryCacheCodec implements CacheCodec {
+
+	/**
+	 * 魔数，json 数据不会以该字节开头
+	 */
+	private static final byte MAGIC = (byte) 0xB1;
+
+	private static final byte VERSION = 2;
+
+	/**
+	 * 版本1的头部长度：魔数 + 版本 + 逻辑过期时间戳
+	 */
+	private static final int HEADER_LENGTH_V1 = 10;
+
+	/**
+	 * 头部长度：魔数 + 版本 + 逻辑过期时间戳 + 重建耗时
+	 */
+	private static final int HEADER_LENGTH = 14;
+
+	/**
+	 * 每个线程复用的输出缓冲区
+	 */
+	private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(Output::new);
+
+	private final Map<Class<?>, BinarySerializer<?>> serializers = new HashMap<>();
+
+	/**
+	 * 是否使用二进制格式写入，关闭后只解码已有的二进制缓存，新数据以 json 格式写入
+	 */
+	private final boolean enabled;
+
+	public BinaryCacheCodec(List<BinarySerializer<?>> serializers,
+							@Value("${hmdp.cache.codec.binary:true}") boolean enabled) {
+		serializers.forEach(serializer -> this.serializers.put(serializer.type(), serializer));
+		this.enabled = enabled;
+	}
+
+	@Override
+	public boolean canEncode(Class<?> type) {
+		return enabled && serializers.containsKey(type);
+	}
+
+	@Override
+	public boolean canDecode(byte[] raw) {
+		return raw.length >= HEADER_LENGTH_V1 && raw[0] == MAGIC;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public byte[] encode(Object value, long expireMillis, int rebuildMillis) {
+		BinarySerializer<Object> serializer = (BinarySerializer<Object>) serializers.get(value.getClass());
+		Output out = OUTPUT.get();
+		out.reset();
+		out.writeByte(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(expireMillis);
+		out.writeInt(rebuildMillis);
+		serializer.write(value, out);
+		return out.toByteArray();
+	}
+
+	@Override
+	public long readExpireMillis(byte[] raw) {
+		long value = 0;
+		for (int i = 2; i < HEADER_LENGTH_V1; i++) {
+			value = (value << 8) | (raw[i] & 0xFF);
+		}
+		return value;
+	}
+
+	@Override
+	public int readRebuildMillis(byte[] raw) {
+		if (raw[1] == 1) {
+			return 0;
+		}
+		int value = 0;
+		for (int i = HEADER_LENGTH_V1; i < HEADER_LENGTH; i++) {
+			value = (value << 8) | (raw[i] & 0xFF);
+		}
+		return value;
+	}
+
+	@Override
+	public <R> R decode(byte[] raw, Class<R> type) {
+		BinarySerializer<?> serializer = serializers.get(type);
+		if (serializer == null) {
+			throw new IllegalStateException("未注册二进制序列化器：" + type.getName());
+		}
+		return type.cast(serializer.read(new Input(raw, raw[1] == 1 ? HEADER_LENGTH_V1 : HEADER_LENGTH)));
+	}
+
+	/**
+	 * 二进制输出，可为空的字段先写一个标记字节
+	 */
+	public static class Output {
+
+		private byte[] buf = new byte[256];
+
+		private int pos;
+
+		void reset() {
+			pos = 0;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, pos);
+		}
+
+		private void ensure(int n) {
+			if (pos + n > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+			}
+		}
+
+		public void writeByte(byte v) {
+			ensure(1);
+			buf[pos++] = v;
+		}
+
+		public void writeInt(int v) {
+			ensure(4);
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				buf[pos++] = (byte) (v >>> shift);
+			}
+		}
+
+		public void writeLong(long v) {
+			ensure(8);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				buf[pos++] = (byte) (v >>> shift);
+			}
+		}
+
+		private boolean writeNull(Object v) {
+			writeByte(v == null ? (byte) 0 : (byte) 1);
+			return v == null;
+		}
+
+		public void writeLong(Long v) {
+			if (!writeNull(v)) {
+				writeLong(v.longValue());
+			}
+		}
+
+		public void writeInt(Integer v) {
+			if (!writeNull(v)) {
+				writeInt(v.intValue());
+			}
+		}
+
+		public void writeDouble(Double v) {
+			if (!writeNull(v)) {
+				writeLong(Double.doubleToRawLongBits(v));
+			}
+		}
+
+		public void writeString(String v) {
+			if (!writeNull(v)) {
+				byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+				writeInt(bytes.length);
+				ensure(bytes.length);
+				System.arraycopy(bytes, 0, buf, pos, bytes.length);
+				pos += bytes.length;
+			}
+		}
+
+		public void writeDateTime(LocalDateTime v) {
+			if (!writeNull(v)) {
+				writeLong(v.toEpochSecond(ZoneOffset.UTC));
+				writeInt(v.getNano());
+			}
+		}
+	}
+
+	/**
+	 * 二进制输入，直接从 redis 返回的字节数组读取
+	 */
+	public static class Input {
+
+		private final byte[] buf;
+
+		private int pos;
+
+		Input(byte[] buf, int pos) {
+			this.buf = buf;
+			this.pos = pos;
+		}
+
+		private boolean readNull() {
+			return buf[pos++] == 0;
+		}
+
+		private int readRawInt() {
+			int v = 0;
+			for (int i = 0; i < 4; i++) {
+				v = (v << 8) | (buf[pos++] & 0xFF);
+			}
+			return v;
+		}
+
+		private long readRawLong() {
+			long v = 0;
+			for (int i = 0; i < 8; i++) {
+				v = (v << 8) | (buf[pos++] & 0xFF);
+			}
+			return v;
+		}
+
+		public Long readLong() {
+			return readNull() ? null : readRawLong();
+		}
+
+		public Integer readInt() {
+			return readNull() ? null : readRawInt();
+		}
+
+		public Double readDouble() {
+			return readNull() ? null : Double.longBitsToDouble(readRawLong());
+		}
+
+		public String readString() {
+			if (readNull()) {
+				return null;
+			}
+			int length = readRawInt();
+			String v = new String(buf, pos, length, StandardCharsets.UTF_8);
+			pos += length;
+			return v;
+		}
+
+		public LocalDateTime readDateTime() {
+			if (readNull()) {
+				return null;
+			}
+			long seconds = readRawLong();
+			return LocalDateTime.ofEpochSecond(seconds, readRawInt(), ZoneOffset.UTC);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+/**
+ * 实体的二进制序列化器，按字段顺序手写读写，由 BinaryCacheCodec 使用
+ */
+public interface BinarySerializer<T> {
+
+	/**
+	 * 支持的实体类型
+	 *
+	 * @return Class
+	 */
+	Class<T> type();
+
+	/**
+	 * 写入实体的所有字段
+	 *
+	 * @param value 实体
+	 * @param out   输出
+	 */
+	void write(T value, BinaryCacheCodec.Output out);
+
+	/**
+	 * 按写入顺序读取实体的所有字段
+	 *
+	 * @param in 输入
+	 * @return 实体
+	 */
+	T read(BinaryCacheCodec.Input in);
+}
@@ -0,0 +1,227 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_CHANNEL;
+
+/**
+ * 布隆过滤器注册中心，按缓存key的前缀管理主键id的布隆过滤器，用于拦截不存在的id，解决缓存穿透
+ * 说明：redis 位图所有节点共享；本地位图的新增id通过 redis 发布订阅通知其他节点，消息丢失时该节点在下次全量重建之前可能误判不存在
+ */
+@Slf4j
+@Component
+public class BloomFilterRegistry implements ApplicationRunner {
+
+	private final StringRedisTemplate stringRedisTemplate;
+
+	/**
+	 * 位图存储方式：local - 本地内存；redis - redis 位图
+	 */
+	private final boolean redisStorage;
+
+	/**
+	 * key：缓存key的前缀
+	 */
+	private final Map<String, IdBloomFilter> filters = new ConcurrentHashMap<>();
+
+	/**
+	 * 位图丢失后等待重建的过滤器名称，同一个过滤器只提交一次
+	 */
+	private final Set<String> pendingRebuilds = ConcurrentHashMap.newKeySet();
+
+	private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "bloom-filter-rebuild");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public BloomFilterRegistry(StringRedisTemplate stringRedisTemplate,
+							   @Value("${hmdp.bloom-filter.storage:redis}") String storage) {
+		this.stringRedisTemplate = stringRedisTemplate;
+		this.redisStorage = "redis".equalsIgnoreCase(storage);
+	}
+
+	/**
+	 * 注册布隆过滤器，应用启动后全量构建
+	 *
+	 * @param keyPrefix          缓存key的前缀
+	 * @param expectedInsertions 预计元素个数
+	 * @param fpp                期望误判率
+	 * @param idPageLoader       分页查询id的函数，参数为上一页最后一个id，返回按id升序的下一页
+	 */
+	public void register(String keyPrefix, long expectedInsertions, double fpp, Function<Long, List<Long>> idPageLoader) {
+		StringRedisTemplate template = redisStorage ? stringRedisTemplate : null;
+		String name = keyPrefix.endsWith(":") ? keyPrefix.substring(0, keyPrefix.length() - 1) : keyPrefix;
+		filters.put(keyPrefix, new IdBloomFilter(name, expectedInsertions, fpp, idPageLoader, template));
+	}
+
+	/**
+	 * 判断id是否可能存在，未注册过滤器的前缀、非数字id一律返回true
+	 * 说明：redis 位图查询失败时返回true，由后续的缓存和数据库查询决定，不因过滤器不可用而拒绝请求；
+	 * 位图被清空或淘汰后过滤器恢复为未就绪状态，不做拦截，并在后台重建
+	 *
+	 * @param keyPrefix 缓存key的前缀
+	 * @param id        主键id
+	 * @return false：一定不存在
+	 */
+	public boolean mightContain(String keyPrefix, Object id) {
+		IdBloomFilter filter = filters.get(keyPrefix);
+		if (filter == null || !(id instanceof Number)) {
+			return true;
+		}
+		try {
+			boolean ready = filter.isReady();
+			boolean result = filter.mightContain(((Number) id).longValue());
+			if (ready && !filter.isReady()) {
+				rebuildAsync(filter);
+			}
+			return result;
+		} catch (Exception e) {
+			log.warn("布隆过滤器{}查询失败，按可能存在处理：{}", filter.getName(), e.toString());
+			return true;
+		}
+	}
+
+	/**
+	 * 新增数据后，将id写入布隆过滤器
+	 * 说明：
+	 * 1.事务提交之前先写入，提交后立即查询的请求不会被拦截
+	 * 2.事务提交后再写入一次：全量重建已读过该id所在的页、而事务尚未提交时，第一次写入可能早于重建开始，提交后的写入保证进入新位图
+	 * 3.本地位图在事务提交后通知其他节点写入
+	 *
+	 * @param keyPrefix 缓存key的前缀
+	 * @param id        主键id
+	 */
+	public void put(String keyPrefix, Long id) {
+		IdBloomFilter filter = filters.get(keyPrefix);
+		if (filter == null || id == null) {
+			return;
+		}
+		filter.put(id);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			publish(keyPrefix, id);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				try {
+					filter.put(id);
+				} catch (Exception e) {
+					log.error("布隆过滤器{}写入失败：{}", filter.getName(), id, e);
+				}
+				publish(keyPrefix, id);
+			}
+		});
+	}
+
+	/**
+	 * 将其他节点新增的id写入当前节点的本地位图，由新增id消息的监听器调用
+	 *
+	 * @param message 缓存key的前缀 + 主键id
+	 */
+	public void onAdded(String message) {
+		if (redisStorage) {
+			return;
+		}
+		int index = message.lastIndexOf(':');
+		IdBloomFilter filter = filters.get(message.substring(0, index + 1));
+		if (filter != null) {
+			filter.put(Long.parseLong(message.substring(index + 1)));
+		}
+	}
+
+	private void publish(String keyPrefix, Long id) {
+		if (redisStorage) {
+			return;
+		}
+		try {
+			stringRedisTemplate.convertAndSend(BLOOM_FILTER_CHANNEL, keyPrefix + id);
+		} catch (Exception e) {
+			log.warn("发布布隆过滤器新增消息失败：{}{}", keyPrefix, id, e);
+		}
+	}
+
+	/**
+	 * 应用启动后全量构建，redis 中已有其他节点构建好的位图时直接复用
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		filters.values().forEach(filter -> {
+			try {
+				if (!filter.restore()) {
+					rebuild(filter);
+				}
+			} catch (Exception e) {
+				// 构建失败不影响启动，过滤器保持不拦截状态，等待定时重建
+				log.error("布隆过滤器{}构建失败", filter.getName(), e);
+			}
+		});
+	}
+
+	/**
+	 * 定时全量重建，清除已删除的id，修正误判率
+	 * 说明：启动时其他节点正在重建而未就绪的过滤器，先尝试复用其他节点构建好的位图
+	 */
+	@Scheduled(initialDelayString = "${hmdp.bloom-filter.rebuild-interval:3600000}",
+			fixedDelayString = "${hmdp.bloom-filter.rebuild-interval:3600000}")
+	public void rebuildAll() {
+		filters.values().forEach(filter -> {
+			try {
+				if (!filter.isReady() && filter.restore()) {
+					return;
+				}
+				rebuild(filter);
+			} catch (Exception e) {
+				log.error("布隆过滤器{}重建失败", filter.getName(), e);
+			}
+		});
+	}
+
+	/**
+	 * 位图丢失后在后台重建，其他节点已经重建完成时直接复用
+	 */
+	private void rebuildAsync(IdBloomFilter filter) {
+		if (!pendingRebuilds.add(filter.getName())) {
+			return;
+		}
+		log.warn("布隆过滤器{}的位图已丢失，暂停拦截并重建", filter.getName());
+		rebuildExecutor.execute(() -> {
+			try {
+				if (!filter.restore()) {
+					rebuild(filter);
+				}
+			} catch (Exception e) {
+				log.error("布隆过滤器{}重建失败", filter.getName(), e);
+			} finally {
+				pendingRebuilds.remove(filter.getName());
+			}
+		});
+	}
+
+	private void rebuild(IdBloomFilter filter) {
+		long begin = System.currentTimeMillis();
+		long count = filter.rebuild();
+		if (count < 0) {
+			log.info("布隆过滤器{}正在由其他节点重建，跳过", filter.getName());
+			return;
+		}
+		log.info("布隆过滤器{}构建完成，id数量：{}，耗时：{}ms", filter.getName(), count, System.currentTimeMillis() - begin);
+	}
+}
@@ -5,21 +5,38 @@
  */
 package com.hmdp.utils;
 
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.BooleanUtils;
-import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
+import static com.hmdp.utils.CacheMetrics.Event.*;
 import static com.hmdp.utils.RedisConstants.*;
 
 /**
@@ -34,12 +51,258 @@ public class CacheClient {
 
 	private final StringRedisTemplate stringRedisTemplate;
 
-	public CacheClient(StringRedisTemplate stringRedisTemplate) {
+	private final BloomFilterRegistry bloomFilterRegistry;
+
+	/**
+	 * 缓存重建线程池
+	 */
+	private final CacheRebuildExecutor rebuildExecutor;
+
+	/**
+	 * 缓存值编解码器，按优先级排序
+	 */
+	private final List<CacheCodec> codecs;
+
+	/**
+	 * 过期策略，在过期时间上叠加随机抖动
+	 */
+	private final ExpiryPolicy expiryPolicy;
+
+	/**
+	 * 热点key探测
+	 */
+	private final HotKeyDetector hotKeyDetector;
+
+	/**
+	 * 热点key的进程内短时副本，所有前缀共用，热点读请求不再访问 redis
+	 */
+	private final LRUCache<String, Object> hotReplica;
+
+	/**
+	 * 按 key 前缀统计的次数和耗时
+	 */
+	private final CacheMetrics metrics;
+
+	/**
+	 * 缓存重建互斥锁
+	 */
+	private final CacheRebuildLock rebuildLock;
+
+	/**
+	 * 本地一级缓存（L1），按 key 前缀开启，key：缓存key的前缀
+	 */
+	private final Map<String, LRUCache<String, Object>> localCaches = new ConcurrentHashMap<>();
+
+	/**
+	 * 本地缓存中的空值标记，对应 redis 中的 ""
+	 */
+	private static final Object NULL_VALUE = new Object();
+
+	/**
+	 * hash 缓存中保存实体数据的字段
+	 */
+	private static final String HASH_DATA_FIELD = "data";
+
+	/**
+	 * hash 缓存计数器版本号的key后缀，每次自增计数器时递增
+	 */
+	private static final String COUNTER_VERSION_SUFFIX = ":version";
+
+	/**
+	 * 计数器版本号的有效时间，单位秒，需要远大于一次加载的耗时；过期只会让正在进行的加载放弃写入
+	 */
+	private static final long COUNTER_VERSION_TTL = 600;
+
+	/**
+	 * 递增计数器版本号，缓存存在时才自增计数器
+	 */
+	private static final DefaultRedisScript<Long> COUNTER_INCR_SCRIPT;
+
+	/**
+	 * 计数器版本号未变化时才写入加载的 hash 缓存
+	 */
+	private static final DefaultRedisScript<Long> HASH_LOAD_SCRIPT;
+
+	static {
+		COUNTER_INCR_SCRIPT = new DefaultRedisScript<>();
+		COUNTER_INCR_SCRIPT.setLocation(new ClassPathResource("counter_incr.lua"));
+		COUNTER_INCR_SCRIPT.setResultType(Long.class);
+		HASH_LOAD_SCRIPT = new DefaultRedisScript<>();
+		HASH_LOAD_SCRIPT.setLocation(new ClassPathResource("hash_load.lua"));
+		HASH_LOAD_SCRIPT.setResultType(Long.class);
+	}
+
+	/**
+	 * 提前刷新系数，越大越早刷新
+	 */
+	private static final double XFETCH_BETA = 1.0;
+
+	/**
+	 * 正在加载的key，用于合并同一个key的并发加载
+	 */
+	private final Map<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+	// 各级缓存的命中统计
+	private final LongAdder l1Hit = new LongAdder();
+	private final LongAdder l1Miss = new LongAdder();
+	private final LongAdder l2Hit = new LongAdder();
+	private final LongAdder l2Miss = new LongAdder();
+	private final LongAdder hotHit = new LongAdder();
+
+	/**
+	 * 重建耗时未知时写入的默认重建耗时，单位毫秒，用于提前刷新
+	 */
+	private final int defaultRebuildMillis;
+
+	public CacheClient(StringRedisTemplate stringRedisTemplate, BloomFilterRegistry bloomFilterRegistry,
+					   CacheRebuildExecutor rebuildExecutor, List<CacheCodec> codecs, ExpiryPolicy expiryPolicy,
+					   HotKeyDetector hotKeyDetector, CacheMetrics metrics, CacheRebuildLock rebuildLock,
+					   @Value("${hmdp.cache.hot-key.replica-capacity:1000}") int hotReplicaCapacity,
+					   @Value("${hmdp.cache.hot-key.replica-ttl:2000}") long hotReplicaTtlMillis,
+					   @Value("${hmdp.cache.rebuild.default-cost:50}") int defaultRebuildMillis) {
 		this.stringRedisTemplate = stringRedisTemplate;
+		this.bloomFilterRegistry = bloomFilterRegistry;
+		this.rebuildExecutor = rebuildExecutor;
+		this.codecs = codecs;
+		this.expiryPolicy = expiryPolicy;
+		this.hotKeyDetector = hotKeyDetector;
+		this.metrics = metrics;
+		this.rebuildLock = rebuildLock;
+		this.hotReplica = CacheUtil.newLRUCache(hotReplicaCapacity, hotReplicaTtlMillis);
+		this.defaultRebuildMillis = defaultRebuildMillis;
+	}
+
+	/**
+	 * 为指定前缀的key开启本地一级缓存，超出容量按 LRU 淘汰，超过存活时间自动失效
+	 *
+	 * @param keyPrefix 缓存key的前缀
+	 * @param capacity  最大缓存条数
+	 * @param time      本地缓存存活时间
+	 * @param unit      时间单位
+	 */
+	public void enableLocalCache(String keyPrefix, int capacity, Long time, TimeUnit unit) {
+		localCaches.put(keyPrefix, CacheUtil.newLRUCache(capacity, unit.toMillis(time)));
+	}
+
+	/**
+	 * 删除缓存，并通过 redis 发布订阅通知所有节点清除本地缓存
+	 *
+	 * @param key 键
+	 */
+	public void delete(String key) {
+		stringRedisTemplate.delete(key);
+		invalidateLocal(key);
+	}
+
+	/**
+	 * 通过 redis 发布订阅通知所有节点（包括当前节点）清除本地缓存，redis 中的缓存保持不变
+	 *
+	 * @param key 键
+	 */
+	public void invalidateLocal(String key) {
+		evictLocal(key);
+		stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+	}
+
+	/**
+	 * 清除当前节点的本地缓存，由缓存失效消息的监听器调用
+	 *
+	 * @param key 键
+	 */
+	public void evictLocal(String key) {
+		hotReplica.remove(key);
+		localCaches.forEach((prefix, cache) -> {
+			if (key.startsWith(prefix)) {
+				cache.remove(key);
+			}
+		});
+	}
+
+	/**
+	 * 各级缓存的命中统计
+	 *
+	 * @return key：统计项，value：次数
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		stats.put("hot.hit", hotHit.sum());
+		stats.put("hot.replicas", (long) hotReplica.size());
+		stats.put("l1.hit", l1Hit.sum());
+		stats.put("l1.miss", l1Miss.sum());
+		stats.put("l2.hit", l2Hit.sum());
+		stats.put("l2.miss", l2Miss.sum());
+		stats.putAll(rebuildExecutor.getStats());
+		return stats;
+	}
+
+	/**
+	 * 访问次数最多的key
+	 *
+	 * @return 热点key列表
+	 */
+	public List<HotKeyDetector.HotKey> getHotKeys() {
+		return hotKeyDetector.getTopKeys();
+	}
+
+	/**
+	 * 查询本地缓存：先查热点副本，再查一级缓存，未开启本地缓存的前缀且不是热点时返回null
+	 */
+	private Object getLocal(String keyPrefix, String key) {
+		Object hot = getHot(key);
+		if (hot != null) {
+			return hot;
+		}
+		LRUCache<String, Object> cache = localCaches.get(keyPrefix);
+		if (cache == null) {
+			return null;
+		}
+		// 不刷新访问时间，保证本地缓存的存活时间是固定的
+		Object value = cache.get(key, false);
+		if (value == null) {
+			l1Miss.increment();
+		} else {
+			l1Hit.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * 记录访问，热点key从进程内副本读取，不是热点或副本不存在时返回null
+	 */
+	private Object getHot(String key) {
+		if (!hotKeyDetector.record(key)) {
+			return null;
+		}
+		Object hot = hotReplica.get(key, false);
+		if (hot != null) {
+			hotHit.increment();
+		}
+		return hot;
+	}
+
+	/**
+	 * 热点key写入进程内副本
+	 */
+	private void putHot(String key, Object value) {
+		if (hotKeyDetector.isHot(key)) {
+			hotReplica.put(key, value);
+		}
 	}
 
 	/**
-	 * 将任意Java对象序列化为json并存储在string类型的key中，并且可以设置TTL过期时间
+	 * 写入本地缓存，未开启本地缓存的前缀直接忽略；热点key同时写入进程内副本
+	 */
+	private void putLocal(String keyPrefix, String key, Object value) {
+		Object local = value == null ? NULL_VALUE : value;
+		putHot(key, local);
+		LRUCache<String, Object> cache = localCaches.get(keyPrefix);
+		if (cache != null) {
+			cache.put(key, local);
+		}
+	}
+
+	/**
+	 * 将任意Java对象序列化并存储在string类型的key中，并且可以设置TTL过期时间
 	 *
 	 * @param key    键
 	 * @param value  值
@@ -47,11 +310,14 @@ public class CacheClient {
 	 * @param unit	 时间单位
 	 */
 	public void set(String key, Object value, Long time, TimeUnit unit) {
-		stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+		byte[] raw = encode(value, CacheCodec.NO_EXPIRE);
+		stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+				connection.pSetEx(rawKey(key), expiryPolicy.ttlMillis(key, unit.toMillis(time)), raw));
 	}
 
 	/**
-	 * 将任意Java对象序列化为json并存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓存击穿问题
+	 * 将任意Java对象序列化并存储在string类型的key中，并且可以设置逻辑过期时间，用于处理缓存击穿问题
+	 * 说明：重建耗时未知，按默认重建耗时写入
 	 *
 	 * @param key    键
 	 * @param value  值
@@ -59,12 +325,102 @@ public class CacheClient {
 	 * @param unit   时间单位
 	 */
 	public void setWithLogicExpire(String key, Object value, Long time, TimeUnit unit) {
+		setWithLogicExpire(key, value, time, unit, defaultRebuildMillis);
+	}
+
+	/**
+	 * 使用管道批量写入逻辑过期缓存，用于缓存预热，按默认重建耗时写入
+	 *
+	 * @param keyPrefix 缓存key的前缀
+	 * @param values    值
+	 * @param idGetter  获取数据id的函数
+	 * @param time      过期时间
+	 * @param unit      时间单位
+	 */
+	public <R> void setBatchWithLogicExpire(String keyPrefix, Collection<R> values, Function<R, ?> idGetter,
+											Long time, TimeUnit unit) {
+		setBatchWithLogicExpire(keyPrefix, values, idGetter, time, unit, defaultRebuildMillis);
+	}
+
+	/**
+	 * 使用管道批量写入逻辑过期缓存，用于缓存预热
+	 * 说明：批量读取分摊了每条数据的查询耗时，不能代表单条重建的耗时，由调用方传入该前缀单条重建的耗时
+	 *
+	 * @param keyPrefix     缓存key的前缀
+	 * @param values        值
+	 * @param idGetter      获取数据id的函数
+	 * @param time          过期时间
+	 * @param unit          时间单位
+	 * @param rebuildMillis 单条数据的重建耗时，单位毫秒，用于提前刷新
+	 */
+	public <R> void setBatchWithLogicExpire(String keyPrefix, Collection<R> values, Function<R, ?> idGetter,
+											Long time, TimeUnit unit, int rebuildMillis) {
+		long now = System.currentTimeMillis();
+		stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			for (R value : values) {
+				// 同一批数据的逻辑过期时间叠加随机抖动，避免同时过期
+				String key = keyPrefix + idGetter.apply(value);
+				long expireMillis = now + expiryPolicy.ttlMillis(key, unit.toMillis(time));
+				connection.set(rawKey(key), encode(value, expireMillis, rebuildMillis));
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * 写入逻辑过期缓存，同时保存重建耗时，用于提前刷新
+	 *
+	 * @param key           键
+	 * @param value         值
+	 * @param time          过期时间
+	 * @param unit          时间单位
+	 * @param rebuildMillis 查询数据库的耗时，单位毫秒
+	 */
+	public void setWithLogicExpire(String key, Object value, Long time, TimeUnit unit, int rebuildMillis) {
 		// 设置逻辑过期
-		RedisData redisData = new RedisData();
-		redisData.setData(value);
-		redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+		long expireMillis = System.currentTimeMillis() + expiryPolicy.ttlMillis(key, unit.toMillis(time));
+		byte[] raw = encode(value, expireMillis, rebuildMillis);
 		// 写入Redis
-		stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+		stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.set(rawKey(key), raw));
+	}
+
+	/**
+	 * 读取 redis 中的原始数据，不经过 StringRedisTemplate 的字符串序列化
+	 */
+	private byte[] getRaw(String key) {
+		return stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey(key)));
+	}
+
+	private static byte[] rawKey(String key) {
+		return key.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 使用第一个支持该类型的编解码器编码
+	 */
+	private byte[] encode(Object value, long expireMillis) {
+		return encode(value, expireMillis, 0);
+	}
+
+	private byte[] encode(Object value, long expireMillis, int rebuildMillis) {
+		for (CacheCodec codec : codecs) {
+			if (codec.canEncode(value.getClass())) {
+				return codec.encode(value, expireMillis, rebuildMillis);
+			}
+		}
+		throw new IllegalStateException("没有支持该类型的编解码器：" + value.getClass().getName());
+	}
+
+	/**
+	 * 使用第一个支持该数据格式的编解码器
+	 */
+	private CacheCodec codecOf(byte[] raw) {
+		for (CacheCodec codec : codecs) {
+			if (codec.canDecode(raw)) {
+				return codec;
+			}
+		}
+		throw new IllegalStateException("没有支持该数据格式的编解码器");
 	}
 
 	/**
@@ -82,34 +438,137 @@ public class CacheClient {
 	 */
 	public <R, ID> R queryWithPassThrough(
 			String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		long begin = System.nanoTime();
 		String key = keyPrefix + id;
+		// 0.查询本地缓存
+		Object local = getLocal(keyPrefix, key);
+		if (local != null) {
+			metrics.record(keyPrefix, local == NULL_VALUE ? NULL_HIT : HIT, begin);
+			return local == NULL_VALUE ? null : type.cast(local);
+		}
+		// 布隆过滤器判断id一定不存在，直接返回，不访问 redis 和数据库
+		if (!bloomFilterRegistry.mightContain(keyPrefix, id)) {
+			return null;
+		}
+
 		// 1.从 redis 查询商铺缓存
-		String json = stringRedisTemplate.opsForValue().get(key);
+		byte[] raw = getRaw(key);
 
-		// 2.商铺信息存在于 redis 中
-		if (StringUtils.isNotBlank(json)) {
-			return JSONUtil.toBean(json, type);
+		// 2.商铺信息存在于 redis 中；命中的值是”“，这里返回的缓存穿透的结果，空值
+		if (raw != null) {
+			l2Hit.increment();
+			R r = decodePassThrough(keyPrefix, key, raw, type);
+			metrics.record(keyPrefix, raw.length == 0 ? NULL_HIT : HIT, begin);
+			return r;
 		}
-		// 3.命中的值是”“，这里返回的缓存穿透的结果，空值
-		if ("".equals(json)) {
-			return null;
+		l2Miss.increment();
+
+		// 4.不存在于 redis 中，同一个key在当前节点只有一个线程重建缓存，其余线程共享重建结果
+		R r = singleFlight(key, () -> rebuildWithMutex(keyPrefix, id, type, dbFallback, time, unit));
+		metrics.record(keyPrefix, MISS, begin);
+		return r;
+	}
+
+	/**
+	 * 缓存重建 - 互斥锁
+	 * 说明：每个节点只有 single-flight 的执行线程会争抢 redis 互斥锁，未获取锁时等待锁释放消息，被唤醒后检查其他节点是否已重建完成
+	 */
+	private <R, ID> R rebuildWithMutex(
+			String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		String key = keyPrefix + id;
+		String lockKey = rebuildLock.lockKeyOf(keyPrefix, id);
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_TTL);
+		String token;
+		while ((token = tryLock(keyPrefix, lockKey)) == null) {
+			// 等待超过锁的有效期，持锁节点可能已经宕机，直接查询数据库
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return loadAndSet(keyPrefix, id, dbFallback, time, unit);
+			}
+			try {
+				rebuildLock.awaitRelease(lockKey, remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			// 其他节点可能已经重建完成
+			byte[] raw = getRaw(key);
+			if (raw != null) {
+				return decodePassThrough(keyPrefix, key, raw, type);
+			}
 		}
+		try {
+			// 获取锁成功，再次检查 redis，避免重复查询数据库
+			byte[] raw = getRaw(key);
+			if (raw != null) {
+				return decodePassThrough(keyPrefix, key, raw, type);
+			}
+			return loadAndSet(keyPrefix, id, dbFallback, time, unit);
+		} finally {
+			rebuildLock.unlock(lockKey, token);
+		}
+	}
 
-		// 4. 不存在于 redis 中，校验商铺信息是否存在
+	/**
+	 * 查询数据库并写入缓存，不存在时写入空值，解决缓存穿透
+	 */
+	private <R, ID> R loadAndSet(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		String key = keyPrefix + id;
+		long begin = System.nanoTime();
 		R r = dbFallback.apply(id);
+		metrics.record(keyPrefix, DB_FALLBACK, begin);
 		if (r == null) {
-			stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+			stringRedisTemplate.opsForValue().set(key, "",
+					expiryPolicy.ttlMillis(key, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL)), TimeUnit.MILLISECONDS);
+			putLocal(keyPrefix, key, null);
 			return null;
 		}
 
 		// 存在，缓存到 redis 中，设置缓存超时时间TTL
 		this.set(key, r, time, unit);
-		// 返回
+		putLocal(keyPrefix, key, r);
 		return r;
 	}
 
-	// 线程池
-	private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+	/**
+	 * 解析 redis 中的缓存，""为空值
+	 */
+	private <R> R decodePassThrough(String keyPrefix, String key, byte[] raw, Class<R> type) {
+		R r = raw.length == 0 ? null : codecOf(raw).decode(raw, type);
+		putLocal(keyPrefix, key, r);
+		return r;
+	}
+
+	/**
+	 * 合并同一个key的并发加载：只有第一个线程执行加载函数，其余线程等待并共享它的结果
+	 *
+	 * @param key    缓存key
+	 * @param loader 加载函数
+	 * @return 加载结果
+	 */
+	@SuppressWarnings("unchecked")
+	private <R> R singleFlight(String key, Supplier<R> loader) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> running = inFlightLoads.putIfAbsent(key, future);
+		if (running != null) {
+			// 已有线程在加载，等待它的结果
+			try {
+				return (R) running.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+			}
+		}
+		try {
+			R r = loader.get();
+			future.complete(r);
+			return r;
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightLoads.remove(key, future);
+		}
+	}
 
 	/**
 	 * 解决缓存击穿 - 设置逻辑过期时间
@@ -126,70 +585,591 @@ public class CacheClient {
 	 */
 	public <R, ID> R queryWithLogicalExpire(
 			String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		long begin = System.nanoTime();
+		String key = keyPrefix + id;
+		// 1.查询缓存
+		LogicalEntry entry = getLogicalEntry(keyPrefix, key, id, type);
+		if (entry == null) {
+			// 热点数据的key值未设置过期时间，理论上不可能不命中，既然未命中，直接返回null值
+			metrics.record(keyPrefix, MISS, begin);
+			return null;
+		}
+		R r = type.cast(entry.data);
+
+		// 2.判断是否过期
+		if (entry.expireMillis > System.currentTimeMillis()) {
+			// 未过期，返回店铺信息
+			metrics.record(keyPrefix, HIT, begin);
+			return r;
+		}
+
+		// 3.逻辑过期，缓存重建
+		rebuildAsync(keyPrefix, id, dbFallback, time, unit);
+
+		// 返回旧的店铺信息（凑合用）
+		metrics.record(keyPrefix, STALE_SERVE, begin);
+		return r;
+	}
+
+	/**
+	 * 解决缓存击穿 - 概率提前刷新（XFetch）
+	 * 说明：在逻辑过期之前按概率提前异步刷新，越接近过期时间、上一次重建耗时越长，刷新概率越大，
+	 * 热点key在过期前就会被某个请求刷新，不会出现所有请求同时发现过期、争抢互斥锁的情况
+	 *
+	 * @param keyPrefix  缓存key的前缀
+	 * @param id		 店铺id
+	 * @param type		 查询类型：店铺
+	 * @param dbFallback 查询数据库函数
+	 * @param time       设置缓存逻辑过期时间
+	 * @param unit		 过期时间单位
+	 * @return
+	 * @param <R>
+	 * @param <ID>
+	 */
+	public <R, ID> R queryWithEarlyRefresh(
+			String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		long begin = System.nanoTime();
 		String key = keyPrefix + id;
+		// 1.查询缓存
+		LogicalEntry entry = getLogicalEntry(keyPrefix, key, id, type);
+		if (entry == null) {
+			metrics.record(keyPrefix, MISS, begin);
+			return null;
+		}
+
+		// 2.按概率判断是否提前刷新：now - rebuildMillis * beta * ln(random) >= expireMillis
+		double random = 1 - ThreadLocalRandom.current().nextDouble();
+		long now = System.currentTimeMillis();
+		if (now - entry.rebuildMillis * XFETCH_BETA * Math.log(random) >= entry.expireMillis) {
+			rebuildAsync(keyPrefix, id, dbFallback, time, unit);
+		}
+		metrics.record(keyPrefix, entry.expireMillis > now ? HIT : STALE_SERVE, begin);
+		return type.cast(entry.data);
+	}
+
+	/**
+	 * 查询逻辑过期缓存，本地缓存的是已经反序列化的数据，仍然需要判断逻辑过期
+	 *
+	 * @return 缓存不存在、布隆过滤器判断id一定不存在时返回null
+	 */
+	private <R> LogicalEntry getLogicalEntry(String keyPrefix, String key, Object id, Class<R> type) {
+		// 0.查询本地缓存
+		LogicalEntry entry = (LogicalEntry) getLocal(keyPrefix, key);
+		if (entry != null) {
+			return entry;
+		}
+		// 布隆过滤器判断id一定不存在，直接返回，不访问 redis
+		if (!bloomFilterRegistry.mightContain(keyPrefix, id)) {
+			return null;
+		}
 		// 1.从 redis 查询商铺缓存
-		String json = stringRedisTemplate.opsForValue().get(key);
+		byte[] raw = getRaw(key);
 
 		// 2.商铺信息不存在于 redis 中
-		if (StringUtils.isBlank(json)) {
-			// 热点数据的key值未设置过期时间，理论上不可能不命中，既然未命中，直接返回null值
+		if (raw == null || raw.length == 0) {
+			l2Miss.increment();
 			return null;
 		}
 
 		// 3.命中
-		RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-		R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-		LocalDateTime expireTime = redisData.getExpireTime();
+		l2Hit.increment();
+		entry = decodeLogical(raw, type);
+		putLocal(keyPrefix, key, entry);
+		return entry;
+	}
 
-		// 4.判断是否过期
-		if (expireTime.isAfter(LocalDateTime.now())) {
-			// 未过期，返回店铺信息
-			return r;
-		}
+	private <R> LogicalEntry decodeLogical(byte[] raw, Class<R> type) {
+		CacheCodec.Decoded<R> decoded = codecOf(raw).decodeEntry(raw, type);
+		return new LogicalEntry(decoded.getData(), decoded.getExpireMillis(), decoded.getRebuildMillis());
+	}
 
-		// 5.逻辑过期，缓存重建
-		String lockKey = LOCK_SHOP_KEY + id;
-		boolean isLock = tryLock(lockKey);
-		if (isLock) {
-			// 获取互斥锁成功，开启独立线程重现缓存（线程池）
-			CACHE_REBUILD_EXECUTOR.submit(() -> {
-				try {
-					// 重建缓存
-					// 查询数据库
-					R r1 = dbFallback.apply(id);
+	/**
+	 * 获取互斥锁后异步重建逻辑过期缓存，并记录重建耗时
+	 */
+	private <R, ID> void rebuildAsync(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		String key = keyPrefix + id;
+		// 当前节点已在重建该key时，不再争抢 redis 互斥锁
+		if (rebuildExecutor.isRebuilding(key)) {
+			return;
+		}
+		String lockKey = rebuildLock.lockKeyOf(keyPrefix, id);
+		String token = tryLock(keyPrefix, lockKey);
+		if (token == null) {
+			return;
+		}
+		// 获取互斥锁成功，开启独立线程重现缓存（线程池）
+		boolean submitted = rebuildExecutor.submit(key, () -> {
+			try {
+				// 重建缓存
+				// 查询数据库
+				long begin = System.nanoTime();
+				R r = dbFallback.apply(id);
+				metrics.record(keyPrefix, DB_FALLBACK, begin);
+				int rebuildMillis = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+				if (r == null) {
+					// 数据已被删除
+					stringRedisTemplate.delete(key);
+				} else {
 					// 写入缓存（带逻辑过期时间）
-					this.setWithLogicExpire(key, r1, time, unit);
-				} catch (Exception e) {
-					throw new RuntimeException(e);
-				} finally {
-					// 释放锁
-					unlock(lockKey);
+					this.setWithLogicExpire(key, r, time, unit, rebuildMillis);
 				}
+				// 本地缓存中的旧数据已过期，清除后下次查询从 redis 加载
+				this.invalidateLocal(key);
+				metrics.record(keyPrefix, REBUILD, begin);
+			} finally {
+				// 释放锁
+				rebuildLock.unlock(lockKey, token);
+			}
+		});
+		if (!submitted) {
+			// 重建队列已满，释放锁，让其他节点有机会重建
+			rebuildLock.unlock(lockKey, token);
+		}
+	}
+
+	/**
+	 * 批量查询 - 解决缓存穿透
+	 * 说明：一次 MGET 查询所有缓存，未命中的id一次批量查询数据库，使用管道回写缓存，不存在的id写入空值
+	 *
+	 * @param keyPrefix  缓存key的前缀
+	 * @param ids        id集合
+	 * @param type       查询类型
+	 * @param dbFallback 批量查询数据库函数，例如 listByIds
+	 * @param idGetter   获取数据id的函数
+	 * @param time       设置缓存超时时间
+	 * @param unit       超时时间单位
+	 * @return key：id，value：数据，按ids的顺序排列，不存在的id不包含在内
+	 * @param <R>
+	 * @param <ID>
+	 */
+	public <R, ID> Map<ID, R> queryBatchWithPassThrough(
+			String keyPrefix, Collection<ID> ids, Class<R> type, Function<Collection<ID>, ? extends Collection<R>> dbFallback,
+			Function<R, ID> idGetter, Long time, TimeUnit unit) {
+		long begin = System.nanoTime();
+		Map<ID, R> found = new HashMap<>(ids.size() * 2);
+		// 1.查询本地缓存，未命中的id过滤布隆过滤器判断不存在的id
+		List<ID> remoteIds = new ArrayList<>();
+		for (ID id : new LinkedHashSet<>(ids)) {
+			Object local = getLocal(keyPrefix, keyPrefix + id);
+			if (local == null) {
+				if (bloomFilterRegistry.mightContain(keyPrefix, id)) {
+					remoteIds.add(id);
+				}
+			} else if (local != NULL_VALUE) {
+				metrics.record(keyPrefix, HIT, begin);
+				found.put(id, type.cast(local));
+			} else {
+				metrics.record(keyPrefix, NULL_HIT, begin);
+			}
+		}
+
+		// 2.一次 MGET 查询 redis
+		List<ID> missIds = new ArrayList<>();
+		List<byte[]> raws = multiGetRaw(keyPrefix, remoteIds);
+		for (int i = 0; i < remoteIds.size(); i++) {
+			ID id = remoteIds.get(i);
+			byte[] raw = raws.get(i);
+			if (raw == null) {
+				l2Miss.increment();
+				missIds.add(id);
+				continue;
+			}
+			l2Hit.increment();
+			R r = decodePassThrough(keyPrefix, keyPrefix + id, raw, type);
+			metrics.record(keyPrefix, r == null ? NULL_HIT : HIT, begin);
+			if (r != null) {
+				found.put(id, r);
+			}
+		}
+
+		// 3.未命中的id一次批量查询数据库，使用管道回写缓存
+		if (!missIds.isEmpty()) {
+			Map<ID, R> loaded = new HashMap<>(missIds.size() * 2);
+			long dbBegin = System.nanoTime();
+			dbFallback.apply(missIds).forEach(r -> loaded.put(idGetter.apply(r), r));
+			metrics.record(keyPrefix, DB_FALLBACK, dbBegin);
+			stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+				for (ID id : missIds) {
+					R r = loaded.get(id);
+					if (r == null) {
+						connection.pSetEx(rawKey(keyPrefix + id),
+								expiryPolicy.ttlMillis(keyPrefix + id, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL)), new byte[0]);
+					} else {
+						connection.pSetEx(rawKey(keyPrefix + id),
+								expiryPolicy.ttlMillis(keyPrefix + id, unit.toMillis(time)), encode(r, CacheCodec.NO_EXPIRE));
+					}
+				}
+				return null;
+			});
+			missIds.forEach(id -> {
+				putLocal(keyPrefix, keyPrefix + id, loaded.get(id));
+				metrics.record(keyPrefix, MISS, begin);
 			});
+			found.putAll(loaded);
 		}
+		return orderByIds(ids, found);
+	}
 
-		// 获取锁失败，返回旧的店铺信息（凑合用）
+	/**
+	 * 批量查询 - 逻辑过期
+	 * 说明：一次 MGET 查询所有缓存，已过期的id使用管道获取互斥锁后，合并为一个重建任务批量查询数据库
+	 *
+	 * @param keyPrefix  缓存key的前缀
+	 * @param ids        id集合
+	 * @param type       查询类型
+	 * @param dbFallback 批量查询数据库函数，例如 listByIds
+	 * @param idGetter   获取数据id的函数
+	 * @param time       设置缓存逻辑过期时间
+	 * @param unit       过期时间单位
+	 * @return key：id，value：数据，按ids的顺序排列，缓存中不存在的id不包含在内
+	 * @param <R>
+	 * @param <ID>
+	 */
+	public <R, ID> Map<ID, R> queryBatchWithLogicalExpire(
+			String keyPrefix, Collection<ID> ids, Class<R> type, Function<Collection<ID>, ? extends Collection<R>> dbFallback,
+			Function<R, ID> idGetter, Long time, TimeUnit unit) {
+		long begin = System.nanoTime();
+		Map<ID, LogicalEntry> entries = new HashMap<>(ids.size() * 2);
+		// 1.查询本地缓存，未命中的id过滤布隆过滤器判断不存在的id
+		List<ID> remoteIds = new ArrayList<>();
+		for (ID id : new LinkedHashSet<>(ids)) {
+			LogicalEntry entry = (LogicalEntry) getLocal(keyPrefix, keyPrefix + id);
+			if (entry == null) {
+				if (bloomFilterRegistry.mightContain(keyPrefix, id)) {
+					remoteIds.add(id);
+				}
+			} else {
+				entries.put(id, entry);
+			}
+		}
+
+		// 2.一次 MGET 查询 redis，未命中的id视为不存在
+		List<byte[]> raws = multiGetRaw(keyPrefix, remoteIds);
+		for (int i = 0; i < remoteIds.size(); i++) {
+			byte[] raw = raws.get(i);
+			if (raw == null || raw.length == 0) {
+				l2Miss.increment();
+				metrics.record(keyPrefix, MISS, begin);
+				continue;
+			}
+			l2Hit.increment();
+			LogicalEntry entry = decodeLogical(raw, type);
+			putLocal(keyPrefix, keyPrefix + remoteIds.get(i), entry);
+			entries.put(remoteIds.get(i), entry);
+		}
+
+		// 3.收集已过期且当前节点没有在重建的id
+		long now = System.currentTimeMillis();
+		Map<ID, R> found = new HashMap<>(entries.size() * 2);
+		List<ID> expiredIds = new ArrayList<>();
+		entries.forEach((id, entry) -> {
+			found.put(id, type.cast(entry.data));
+			if (entry.expireMillis > now) {
+				metrics.record(keyPrefix, HIT, begin);
+				return;
+			}
+			metrics.record(keyPrefix, STALE_SERVE, begin);
+			if (!rebuildExecutor.isRebuilding(keyPrefix + id)) {
+				expiredIds.add(id);
+			}
+		});
+		if (!expiredIds.isEmpty()) {
+			rebuildBatch(keyPrefix, expiredIds, dbFallback, idGetter, time, unit);
+		}
+		// 返回数据，已过期的数据凑合用
+		return orderByIds(ids, found);
+	}
+
+	/**
+	 * 批量重建逻辑过期缓存：管道获取互斥锁，获取成功的id合并为一个重建任务
+	 */
+	private <R, ID> void rebuildBatch(String keyPrefix, List<ID> expiredIds,
+									  Function<Collection<ID>, ? extends Collection<R>> dbFallback,
+									  Function<R, ID> idGetter, Long time, TimeUnit unit) {
+		String token = rebuildLock.newToken();
+		List<String> expiredLockKeys = new ArrayList<>(expiredIds.size());
+		expiredIds.forEach(id -> expiredLockKeys.add(rebuildLock.lockKeyOf(keyPrefix, id)));
+		long lockBegin = System.nanoTime();
+		List<Boolean> results = rebuildLock.tryLockBatch(expiredLockKeys, token);
+		List<ID> lockedIds = new ArrayList<>();
+		List<String> lockKeys = new ArrayList<>(expiredIds.size());
+		for (int i = 0; i < expiredIds.size(); i++) {
+			if (results.get(i)) {
+				lockKeys.add(expiredLockKeys.get(i));
+				metrics.record(keyPrefix, LOCK_ACQUIRED, lockBegin);
+				lockedIds.add(expiredIds.get(i));
+			} else {
+				metrics.record(keyPrefix, LOCK_FAILED, lockBegin);
+			}
+		}
+		if (lockedIds.isEmpty()) {
+			return;
+		}
+		List<String> keys = new ArrayList<>(lockedIds.size());
+		lockedIds.forEach(id -> keys.add(keyPrefix + id));
+		boolean submitted = rebuildExecutor.submit(keys, () -> {
+			try {
+				// 批量查询数据库
+				Map<ID, R> loaded = new HashMap<>(lockedIds.size() * 2);
+				long begin = System.nanoTime();
+				dbFallback.apply(lockedIds).forEach(r -> loaded.put(idGetter.apply(r), r));
+				metrics.record(keyPrefix, DB_FALLBACK, begin);
+				int rebuildMillis = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+				// 管道写入缓存（带逻辑过期时间），数据已被删除的删除缓存
+				long now = System.currentTimeMillis();
+				stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+					for (ID id : lockedIds) {
+						R r = loaded.get(id);
+						if (r == null) {
+							connection.del(rawKey(keyPrefix + id));
+						} else {
+							long expireMillis = now + expiryPolicy.ttlMillis(keyPrefix + id, unit.toMillis(time));
+							connection.set(rawKey(keyPrefix + id), encode(r, expireMillis, rebuildMillis));
+						}
+					}
+					return null;
+				});
+				keys.forEach(this::invalidateLocal);
+				metrics.record(keyPrefix, REBUILD, begin);
+			} finally {
+				// 释放锁
+				rebuildLock.unlock(lockKeys, token);
+			}
+		});
+		if (!submitted) {
+			rebuildLock.unlock(lockKeys, token);
+		}
+	}
+
+	/**
+	 * hash 缓存 - 逻辑过期 + 计数器字段
+	 * 说明：静态字段以紧凑格式（带逻辑过期时间）保存在 data 字段，计数器保存为单独的 hash 字段，由 incrementField 原子自增。
+	 * 一次 HMGET 读取 data 和所有计数器后组装；计数器变化不会使缓存失效，逻辑过期后异步重建时只覆盖 data，已有的计数器保持不变。
+	 * 缓存不存在时查询数据库写入缓存，同一个key在当前节点只有一个线程查询；
+	 * 查询数据库之前读取计数器版本号，写入时版本号已变化说明加载期间有自增，放弃写入，避免用旧的计数器覆盖。
+	 * 热点key直接返回进程内副本中组装好的数据，不访问 redis，计数器最多落后副本的存活时间
+	 *
+	 * @param keyPrefix  缓存key的前缀
+	 * @param id         数据id
+	 * @param type       查询类型
+	 * @param counters   计数器字段
+	 * @param dbFallback 查询数据库函数
+	 * @param time       设置缓存逻辑过期时间
+	 * @param unit       过期时间单位
+	 * @return
+	 * @param <R>
+	 * @param <ID>
+	 */
+	public <R, ID> R queryWithHash(String keyPrefix, ID id, Class<R> type, List<CounterField<R>> counters,
+								   Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		long begin = System.nanoTime();
+		String key = keyPrefix + id;
+		// 0.热点key查询进程内副本
+		Object hot = getHot(key);
+		if (type.isInstance(hot)) {
+			metrics.record(keyPrefix, HIT, begin);
+			return type.cast(hot);
+		}
+		// 布隆过滤器判断id一定不存在，直接返回，不访问 redis 和数据库
+		if (!bloomFilterRegistry.mightContain(keyPrefix, id)) {
+			return null;
+		}
+		// 1.一次 HMGET 查询 data 和计数器
+		byte[][] fields = new byte[counters.size() + 1][];
+		fields[0] = rawKey(HASH_DATA_FIELD);
+		for (int i = 0; i < counters.size(); i++) {
+			fields[i + 1] = rawKey(counters.get(i).getName());
+		}
+		List<byte[]> values = stringRedisTemplate.execute(
+				(RedisCallback<List<byte[]>>) connection -> connection.hMGet(rawKey(key), fields));
+		byte[] raw = values == null ? null : values.get(0);
+
+		// 2.未命中，查询数据库并写入缓存
+		if (raw == null) {
+			l2Miss.increment();
+			R r = singleFlight(key, () -> {
+				String version = counterVersion(key);
+				long dbBegin = System.nanoTime();
+				R loaded = dbFallback.apply(id);
+				metrics.record(keyPrefix, DB_FALLBACK, dbBegin);
+				int rebuildMillis = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - dbBegin);
+				if (loaded != null) {
+					setWithHash(key, loaded, counters, time, unit, true, rebuildMillis, version);
+					putHot(key, loaded);
+				}
+				return loaded;
+			});
+			metrics.record(keyPrefix, MISS, begin);
+			return r;
+		}
+
+		// 3.命中，使用 hash 字段中的计数器覆盖 data 中的旧值
+		l2Hit.increment();
+		CacheCodec codec = codecOf(raw);
+		R r = codec.decode(raw, type);
+		for (int i = 0; i < counters.size(); i++) {
+			byte[] counter = values.get(i + 1);
+			if (counter != null) {
+				counters.get(i).set(r, Long.valueOf(new String(counter, StandardCharsets.UTF_8)));
+			}
+		}
+		putHot(key, r);
+
+		// 4.逻辑过期，异步重建 data
+		if (codec.readExpireMillis(raw) > System.currentTimeMillis()) {
+			metrics.record(keyPrefix, HIT, begin);
+			return r;
+		}
+		rebuildHashAsync(keyPrefix, id, counters, dbFallback, time, unit);
+		metrics.record(keyPrefix, STALE_SERVE, begin);
 		return r;
 	}
 
 	/**
-	 * 获取锁
+	 * hash 缓存的计数器自增，需要在数据库的自增提交之后调用；缓存不存在时只递增版本号，下次查询时从数据库加载
 	 *
-	 * @param key
-	 * @return boolean
+	 * @param key   缓存key
+	 * @param field 计数器字段名
+	 * @param delta 增量
+	 * @return 自增后的值，缓存不存在时返回null
 	 */
-	private boolean tryLock(String key) {
-		Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
-		return BooleanUtils.isTrue(flag);
+	public Long incrementField(String key, String field, long delta) {
+		return stringRedisTemplate.execute(COUNTER_INCR_SCRIPT, Arrays.asList(key, key + COUNTER_VERSION_SUFFIX),
+				field, String.valueOf(delta), String.valueOf(COUNTER_VERSION_TTL));
 	}
 
 	/**
-	 * 释放锁
+	 * 查询数据库之前读取计数器版本号，不存在时为空字符串
+	 */
+	private String counterVersion(String key) {
+		String version = stringRedisTemplate.opsForValue().get(key + COUNTER_VERSION_SUFFIX);
+		return version == null ? "" : version;
+	}
+
+	/**
+	 * 写入 hash 缓存：data 字段和计数器字段在一个脚本中写入，计数器版本号与加载前读取的不一致时不写入
 	 *
-	 * @param key
+	 * @param overwriteCounters true：覆盖计数器；false：只写入不存在的计数器，保留已自增的值
+	 * @param version           查询数据库之前读取的计数器版本号
 	 */
-	private void unlock(String key) {
-		stringRedisTemplate.delete(key);
+	private <R> void setWithHash(String key, R value, List<CounterField<R>> counters, Long time, TimeUnit unit,
+								 boolean overwriteCounters, int rebuildMillis, String version) {
+		long expireMillis = System.currentTimeMillis() + expiryPolicy.ttlMillis(key, unit.toMillis(time));
+		Object[] args = new Object[4 + counters.size() * 2];
+		args[0] = rawKey(version);
+		args[1] = rawKey(overwriteCounters ? "1" : "0");
+		args[2] = rawKey(HASH_DATA_FIELD);
+		args[3] = encode(value, expireMillis, rebuildMillis);
+		for (int i = 0; i < counters.size(); i++) {
+			CounterField<R> counter = counters.get(i);
+			Number number = counter.get(value);
+			args[4 + i * 2] = rawKey(counter.getName());
+			args[5 + i * 2] = rawKey(String.valueOf(number == null ? 0 : number.longValue()));
+		}
+		Long written = stringRedisTemplate.execute(HASH_LOAD_SCRIPT, RedisSerializer.byteArray(),
+				new GenericToStringSerializer<>(Long.class), Arrays.asList(key, key + COUNTER_VERSION_SUFFIX), args);
+		if (written == null || written == 0) {
+			log.debug("加载期间计数器有自增，放弃写入：{}", key);
+		}
 	}
 
+	/**
+	 * 获取互斥锁后异步重建 hash 缓存的 data 字段
+	 */
+	private <R, ID> void rebuildHashAsync(String keyPrefix, ID id, List<CounterField<R>> counters,
+										  Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		String key = keyPrefix + id;
+		if (rebuildExecutor.isRebuilding(key)) {
+			return;
+		}
+		String lockKey = rebuildLock.lockKeyOf(keyPrefix, id);
+		String token = tryLock(keyPrefix, lockKey);
+		if (token == null) {
+			return;
+		}
+		boolean submitted = rebuildExecutor.submit(key, () -> {
+			try {
+				String version = counterVersion(key);
+				long begin = System.nanoTime();
+				R r = dbFallback.apply(id);
+				metrics.record(keyPrefix, DB_FALLBACK, begin);
+				int rebuildMillis = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+				if (r == null) {
+					// 数据已被删除
+					stringRedisTemplate.delete(key);
+				} else {
+					setWithHash(key, r, counters, time, unit, false, rebuildMillis, version);
+				}
+				metrics.record(keyPrefix, REBUILD, begin);
+			} finally {
+				rebuildLock.unlock(lockKey, token);
+			}
+		});
+		if (!submitted) {
+			rebuildLock.unlock(lockKey, token);
+		}
+	}
+
+	/**
+	 * 一次 MGET 查询多个key的原始数据
+	 */
+	private <ID> List<byte[]> multiGetRaw(String keyPrefix, List<ID> ids) {
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		byte[][] keys = new byte[ids.size()][];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = rawKey(keyPrefix + ids.get(i));
+		}
+		return stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+	}
+
+	/**
+	 * 按ids的顺序排列查询结果
+	 */
+	private static <R, ID> Map<ID, R> orderByIds(Collection<ID> ids, Map<ID, R> found) {
+		Map<ID, R> result = new LinkedHashMap<>(found.size() * 2);
+		for (ID id : ids) {
+			R r = found.get(id);
+			if (r != null) {
+				result.put(id, r);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 获取锁
+	 *
+	 * @param keyPrefix 缓存key的前缀，用于统计
+	 * @param lockKey   锁的key
+	 * @return 持有者标识，获取失败时返回null
+	 */
+	private String tryLock(String keyPrefix, String lockKey) {
+		long begin = System.nanoTime();
+		String token = rebuildLock.tryLock(lockKey);
+		metrics.record(keyPrefix, token != null ? LOCK_ACQUIRED : LOCK_FAILED, begin);
+		return token;
+	}
+
+	/**
+	 * 本地缓存中的逻辑过期数据
+	 */
+	private static final class LogicalEntry {
+
+		private final Object data;
+
+		private final long expireMillis;
+
+		/**
+		 * 上一次重建缓存的耗时
+		 */
+		private final int rebuildMillis;
+
+		private LogicalEntry(Object data, long expireMillis, int rebuildMillis) {
+			this.data = data;
+			this.expireMillis = expireMillis;
+			this.rebuildMillis = rebuildMillis;
+		}
+	}
 }
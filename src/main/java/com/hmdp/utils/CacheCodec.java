@@ -0,0 +1,114 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+
+/**
+ * 缓存值编解码器
+ * 说明：写入时按类型选择编码器，读取时按数据格式选择解码器，不同格式的缓存可以共存，便于迁移
+ */
+public interface CacheCodec {
+
+	/**
+	 * 没有逻辑过期时间
+	 */
+	long NO_EXPIRE = -1L;
+
+	/**
+	 * 是否支持编码该类型
+	 *
+	 * @param type 值类型
+	 * @return boolean
+	 */
+	boolean canEncode(Class<?> type);
+
+	/**
+	 * 是否支持解码该数据
+	 *
+	 * @param raw redis 中的原始数据
+	 * @return boolean
+	 */
+	boolean canDecode(byte[] raw);
+
+	/**
+	 * 编码
+	 *
+	 * @param value        值
+	 * @param expireMillis 逻辑过期时间戳（毫秒），NO_EXPIRE 表示没有逻辑过期时间
+	 * @return 编码后的数据
+	 */
+	default byte[] encode(Object value, long expireMillis) {
+		return encode(value, expireMillis, 0);
+	}
+
+	/**
+	 * 编码，同时保存重建耗时，用于提前刷新
+	 *
+	 * @param value         值
+	 * @param expireMillis  逻辑过期时间戳（毫秒），NO_EXPIRE 表示没有逻辑过期时间
+	 * @param rebuildMillis 上一次重建缓存的耗时（毫秒）
+	 * @return 编码后的数据
+	 */
+	byte[] encode(Object value, long expireMillis, int rebuildMillis);
+
+	/**
+	 * 读取逻辑过期时间戳
+	 *
+	 * @param raw redis 中的原始数据
+	 * @return 逻辑过期时间戳（毫秒），没有逻辑过期时间时返回 NO_EXPIRE
+	 */
+	long readExpireMillis(byte[] raw);
+
+	/**
+	 * 读取重建耗时
+	 *
+	 * @param raw redis 中的原始数据
+	 * @return 上一次重建缓存的耗时（毫秒），没有记录时返回0
+	 */
+	int readRebuildMillis(byte[] raw);
+
+	/**
+	 * 解码
+	 *
+	 * @param raw  redis 中的原始数据
+	 * @param type 值类型
+	 * @return 值
+	 */
+	<R> R decode(byte[] raw, Class<R> type);
+
+	/**
+	 * 解码逻辑过期缓存，同时读取逻辑过期时间戳和重建耗时
+	 * 说明：默认分别读取；需要解析整个数据才能读取字段的编解码器应重写，只解析一次
+	 *
+	 * @param raw  redis 中的原始数据
+	 * @param type 值类型
+	 * @return 值、逻辑过期时间戳和重建耗时
+	 */
+	default <R> Decoded<R> decodeEntry(byte[] raw, Class<R> type) {
+		return new Decoded<>(decode(raw, type), readExpireMillis(raw), readRebuildMillis(raw));
+	}
+
+	/**
+	 * 解码结果
+	 */
+	@Getter
+	class Decoded<R> {
+
+		private final R data;
+
+		/**
+		 * 逻辑过期时间戳（毫秒），没有逻辑过期时间时为 NO_EXPIRE
+		 */
+		private final long expireMillis;
+
+		/**
+		 * 上一次重建缓存的耗时（毫秒）
+		 */
+		private final int rebuildMillis;
+
+		Decoded(R data, long expireMillis, int rebuildMillis) {
+			this.data = data;
+			this.expireMillis = expireMillis;
+			this.rebuildMillis = rebuildMillis;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存指标，按 key 前缀统计 CacheClient 各条路径的次数和耗时
+ * 说明：每个事件对应一个耗时直方图，直方图的 count 即事件次数；前缀第一次出现时创建，之后记录不分配对象
+ */
+@Component
+public class CacheMetrics {
+
+	/**
+	 * 缓存事件
+	 */
+	public enum Event {
+		/**
+		 * 命中有效数据，耗时为整个查询的耗时
+		 */
+		HIT,
+		/**
+		 * 命中空值标记
+		 */
+		NULL_HIT,
+		/**
+		 * 各级缓存均未命中，耗时包括重建缓存
+		 */
+		MISS,
+		/**
+		 * 查询数据库，耗时为数据库查询的耗时
+		 */
+		DB_FALLBACK,
+		/**
+		 * 逻辑过期后返回旧数据
+		 */
+		STALE_SERVE,
+		/**
+		 * 获取重建互斥锁成功，耗时为一次加锁请求的耗时
+		 */
+		LOCK_ACQUIRED,
+		/**
+		 * 获取重建互斥锁失败
+		 */
+		LOCK_FAILED,
+		/**
+		 * 缓存重建，耗时为查询数据库并写入缓存的总耗时
+		 */
+		REBUILD
+	}
+
+	private static final Event[] EVENTS = Event.values();
+
+	/**
+	 * key：缓存key的前缀，value：按事件序号排列的耗时直方图
+	 */
+	private final Map<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<>();
+
+	/**
+	 * 记录一次事件
+	 *
+	 * @param keyPrefix  缓存key的前缀
+	 * @param event      事件
+	 * @param beginNanos 开始时间，System.nanoTime()
+	 */
+	public void record(String keyPrefix, Event event, long beginNanos) {
+		histogramsOf(keyPrefix)[event.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - beginNanos));
+	}
+
+	private LatencyHistogram[] histogramsOf(String keyPrefix) {
+		LatencyHistogram[] result = histograms.get(keyPrefix);
+		if (result != null) {
+			return result;
+		}
+		return histograms.computeIfAbsent(keyPrefix, k -> {
+			LatencyHistogram[] created = new LatencyHistogram[EVENTS.length];
+			for (int i = 0; i < created.length; i++) {
+				created[i] = new LatencyHistogram();
+			}
+			return created;
+		});
+	}
+
+	/**
+	 * 指标快照
+	 *
+	 * @return key：缓存key的前缀，value：命中率和各事件的次数、耗时分布（微秒）
+	 */
+	public Map<String, Map<String, Object>> snapshot() {
+		Map<String, Map<String, Object>> result = new TreeMap<>();
+		histograms.forEach((prefix, prefixHistograms) -> {
+			Map<String, Object> metrics = new LinkedHashMap<>();
+			long hit = prefixHistograms[Event.HIT.ordinal()].getCount()
+					+ prefixHistograms[Event.NULL_HIT.ordinal()].getCount()
+					+ prefixHistograms[Event.STALE_SERVE.ordinal()].getCount();
+			long total = hit + prefixHistograms[Event.MISS.ordinal()].getCount();
+			metrics.put("hitRatio", total == 0 ? 0D : (double) hit / total);
+			for (Event event : EVENTS) {
+				metrics.put(event.name().toLowerCase(), prefixHistograms[event.ordinal()].snapshot());
+			}
+			result.put(prefix, metrics);
+		});
+		return result;
+	}
+}
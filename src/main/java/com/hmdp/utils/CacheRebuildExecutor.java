@@ -0,0 +1,214 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建线程池
+ * 说明：
+ * 1.有界队列，队列满时直接拒绝，调用方继续返回旧数据，不会因为数据库变慢而堆积任务
+ * 2.同一个key同时只有一个重建任务
+ * 3.重建任务超时后只记录超时，不中断执行线程，避免打断正在进行的数据库、Redis调用；key在任务真正结束后才释放
+ * 4.统计重建耗时和失败次数
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * 超时检测线程
+	 */
+	private final ScheduledExecutorService timeoutScheduler;
+
+	/**
+	 * 重建超时时间，单位毫秒
+	 */
+	private final long timeoutMillis;
+
+	/**
+	 * 正在排队或执行重建任务的key
+	 */
+	private final Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+
+	// 重建统计
+	private final LongAdder submitted = new LongAdder();
+	private final LongAdder deduplicated = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder succeeded = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final LongAdder timedOut = new LongAdder();
+	private final LongAdder totalMillis = new LongAdder();
+	private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+
+	public CacheRebuildExecutor(@Value("${hmdp.cache.rebuild.threads:10}") int threads,
+								@Value("${hmdp.cache.rebuild.queue-capacity:100}") int queueCapacity,
+								@Value("${hmdp.cache.rebuild.timeout:5000}") long timeoutMillis) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				r -> new Thread(r, "cache-rebuild-" + threadNumber.incrementAndGet()),
+				new ThreadPoolExecutor.AbortPolicy());
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread thread = new Thread(r, "cache-rebuild-timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// 任务正常结束后取消的超时检测及时从队列中移除
+		scheduler.setRemoveOnCancelPolicy(true);
+		this.timeoutScheduler = scheduler;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * 当前节点是否正在重建该key
+	 *
+	 * @param key 缓存key
+	 * @return boolean
+	 */
+	public boolean isRebuilding(String key) {
+		return inFlightKeys.contains(key);
+	}
+
+	/**
+	 * 提交重建任务
+	 *
+	 * @param key  缓存key
+	 * @param task 重建任务
+	 * @return 是否提交成功，同一个key已有任务或队列已满时返回false
+	 */
+	public boolean submit(String key, Runnable task) {
+		return submit(Collections.singletonList(key), task);
+	}
+
+	/**
+	 * 提交批量重建任务，一个任务同时重建多个key
+	 *
+	 * @param keys 缓存key
+	 * @param task 重建任务
+	 * @return 是否提交成功，任意一个key已有任务或队列已满时返回false
+	 */
+	public boolean submit(Collection<String> keys, Runnable task) {
+		List<String> added = new ArrayList<>(keys.size());
+		for (String key : keys) {
+			if (!inFlightKeys.add(key)) {
+				inFlightKeys.removeAll(added);
+				deduplicated.increment();
+				return false;
+			}
+			added.add(key);
+		}
+		try {
+			executor.execute(new RebuildTask(added, task));
+			submitted.increment();
+			return true;
+		} catch (RejectedExecutionException e) {
+			// 队列已满，放弃本次重建，继续返回旧数据
+			inFlightKeys.removeAll(added);
+			rejected.increment();
+			log.warn("缓存重建队列已满，放弃重建：{}", keys);
+			return false;
+		}
+	}
+
+	/**
+	 * 重建统计
+	 *
+	 * @return key：统计项，value：数值
+	 */
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		long completed = succeeded.sum() + failed.sum();
+		stats.put("rebuild.submitted", submitted.sum());
+		stats.put("rebuild.deduplicated", deduplicated.sum());
+		stats.put("rebuild.rejected", rejected.sum());
+		stats.put("rebuild.succeeded", succeeded.sum());
+		stats.put("rebuild.failed", failed.sum());
+		stats.put("rebuild.timedOut", timedOut.sum());
+		stats.put("rebuild.avgMillis", completed == 0 ? 0 : totalMillis.sum() / completed);
+		stats.put("rebuild.maxMillis", maxMillis.get());
+		stats.put("rebuild.queued", (long) executor.getQueue().size());
+		stats.put("rebuild.active", (long) executor.getActiveCount());
+		return stats;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+		timeoutScheduler.shutdownNow();
+	}
+
+	/**
+	 * 重建任务：开始执行时启动超时检测，真正结束（完成、失败）时释放key并记录统计
+	 * 说明：超时只把任务标记为取消，执行线程继续跑完，期间key仍然占用，同一个key不会再提交新的重建任务
+	 */
+	private class RebuildTask extends FutureTask<Void> {
+
+		private final List<String> keys;
+
+		RebuildTask(List<String> keys, Runnable task) {
+			super(task, null);
+			this.keys = keys;
+		}
+
+		@Override
+		public void run() {
+			long startTime = System.currentTimeMillis();
+			ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+				if (cancel(false)) {
+					timedOut.increment();
+					log.warn("缓存重建超时：{}，超时时间：{}ms，等待任务结束后释放", keys, timeoutMillis);
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+			try {
+				super.run();
+			} finally {
+				timeout.cancel(false);
+				inFlightKeys.removeAll(keys);
+				record(System.currentTimeMillis() - startTime);
+			}
+		}
+
+		private void record(long cost) {
+			try {
+				get();
+				succeeded.increment();
+			} catch (CancellationException e) {
+				failed.increment();
+				log.warn("超时的缓存重建已结束：{}，耗时：{}ms", keys, cost);
+			} catch (ExecutionException e) {
+				failed.increment();
+				log.error("缓存重建失败：{}", keys, e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			totalMillis.add(cost);
+			maxMillis.accumulate(cost);
+		}
+	}
+}
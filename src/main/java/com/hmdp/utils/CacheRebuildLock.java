@@ -0,0 +1,182 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import org.apache.commons.lang3.BooleanUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 缓存重建互斥锁
+ * 说明：
+ * 1.锁的key由缓存key的前缀推导，例如 cache:shop:1 -> lock:shop:1，不同前缀相同id的锁互不影响
+ * 2.加锁时写入本次加锁的持有者标识，释放时使用 lua 脚本比较标识后删除，不会误删其他节点的锁
+ * 3.释放锁时发布锁释放消息，等待锁的线程收到消息后被唤醒，不需要轮询 redis
+ */
+@Component
+public class CacheRebuildLock {
+
+	private static final String CACHE_KEY_PREFIX = "cache:";
+
+	private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+	static {
+		UNLOCK_SCRIPT = new DefaultRedisScript<>();
+		UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+		UNLOCK_SCRIPT.setResultType(Long.class);
+	}
+
+	private final StringRedisTemplate stringRedisTemplate;
+
+	/**
+	 * 当前节点等待锁释放的线程，key：锁的key；最后一个等待的线程返回时移除，锁因过期而释放、没有释放消息时也不会残留
+	 */
+	private final Map<String, Waiter> waiters = new ConcurrentHashMap<>();
+
+	public CacheRebuildLock(StringRedisTemplate stringRedisTemplate) {
+		this.stringRedisTemplate = stringRedisTemplate;
+	}
+
+	/**
+	 * 由缓存key的前缀推导锁的key
+	 *
+	 * @param keyPrefix 缓存key的前缀
+	 * @param id        数据id
+	 * @return 锁的key
+	 */
+	public String lockKeyOf(String keyPrefix, Object id) {
+		String name = keyPrefix.startsWith(CACHE_KEY_PREFIX) ? keyPrefix.substring(CACHE_KEY_PREFIX.length()) : keyPrefix;
+		return LOCK_KEY + name + id;
+	}
+
+	/**
+	 * 尝试获取锁
+	 *
+	 * @param lockKey 锁的key
+	 * @return 持有者标识，获取失败时返回null
+	 */
+	public String tryLock(String lockKey) {
+		String token = newToken();
+		Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, LOCK_TTL, TimeUnit.SECONDS);
+		return BooleanUtils.isTrue(flag) ? token : null;
+	}
+
+	/**
+	 * 使用管道批量获取锁，所有锁使用同一个持有者标识
+	 *
+	 * @param lockKeys 锁的key
+	 * @param token    持有者标识，由 newToken 生成
+	 * @return 与 lockKeys 一一对应，是否获取成功
+	 */
+	public List<Boolean> tryLockBatch(List<String> lockKeys, String token) {
+		byte[] value = token.getBytes(StandardCharsets.UTF_8);
+		List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+			for (String lockKey : lockKeys) {
+				connection.set(lockKey.getBytes(StandardCharsets.UTF_8), value,
+						Expiration.seconds(LOCK_TTL), RedisStringCommands.SetOption.ifAbsent());
+			}
+			return null;
+		});
+		List<Boolean> locked = new ArrayList<>(results.size());
+		results.forEach(result -> locked.add(BooleanUtils.isTrue((Boolean) result)));
+		return locked;
+	}
+
+	/**
+	 * 生成持有者标识
+	 *
+	 * @return String
+	 */
+	public String newToken() {
+		return UUID.randomUUID().toString(true);
+	}
+
+	/**
+	 * 释放锁，只有持有者标识一致时才删除
+	 *
+	 * @param lockKey 锁的key
+	 * @param token   持有者标识
+	 */
+	public void unlock(String lockKey, String token) {
+		unlock(Collections.singletonList(lockKey), token);
+	}
+
+	/**
+	 * 批量释放同一个持有者的锁
+	 *
+	 * @param lockKeys 锁的key
+	 * @param token    持有者标识
+	 */
+	public void unlock(List<String> lockKeys, String token) {
+		stringRedisTemplate.execute(UNLOCK_SCRIPT, lockKeys, token, LOCK_RELEASE_CHANNEL);
+	}
+
+	/**
+	 * 等待锁释放，收到锁释放消息、锁已不存在或超时后返回
+	 *
+	 * @param lockKey       锁的key
+	 * @param timeoutMillis 最长等待时间
+	 * @throws InterruptedException 等待时被中断
+	 */
+	public void awaitRelease(String lockKey, long timeoutMillis) throws InterruptedException {
+		Waiter waiter = waiters.compute(lockKey, (k, w) -> {
+			w = w == null ? new Waiter() : w;
+			w.count++;
+			return w;
+		});
+		try {
+			// 注册之前锁可能已经释放，错过了消息，再检查一次
+			if (BooleanUtils.isNotTrue(stringRedisTemplate.hasKey(lockKey))) {
+				return;
+			}
+			waiter.future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			// 超时后由调用方重新检查缓存或继续争抢锁
+		} finally {
+			// 已被 onReleased 移除或替换时不处理
+			waiters.computeIfPresent(lockKey, (k, w) -> w != waiter || --w.count > 0 ? w : null);
+		}
+	}
+
+	/**
+	 * 收到锁释放消息，唤醒当前节点等待该锁的线程，由锁释放消息的监听器调用
+	 *
+	 * @param lockKey 锁的key
+	 */
+	public void onReleased(String lockKey) {
+		Waiter waiter = waiters.remove(lockKey);
+		if (waiter != null) {
+			waiter.future.complete(null);
+		}
+	}
+
+	/**
+	 * 当前节点等待同一个锁的线程共用一个 future
+	 */
+	private static final class Waiter {
+
+		private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+		/**
+		 * 正在等待的线程数量，只在 waiters 的 compute 中修改
+		 */
+		private int count;
+	}
+}
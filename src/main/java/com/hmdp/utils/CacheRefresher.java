@@ -0,0 +1,161 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 写路径的缓存维护
+ * 说明：
+ * 1.数据库事务提交后才维护缓存，事务回滚时缓存保持不变
+ * 2.refresh 模式：异步查询数据库重建逻辑过期缓存，key 始终存在，逻辑过期查询不会把更新中的数据当作不存在；
+ * delete 模式：删除缓存，适用于缓存穿透方案
+ * 3.重建失败时按指数退避重试
+ * 4.延迟一段时间后再维护一次（延迟双删），覆盖事务提交前已读取旧数据、提交后才写入缓存的并发重建
+ */
+@Slf4j
+@Component
+public class CacheRefresher {
+
+	public static final String MODE_REFRESH = "refresh";
+
+	public static final String MODE_DELETE = "delete";
+
+	private final CacheClient cacheClient;
+
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * 写路径的缓存维护方式：refresh、delete
+	 */
+	private final String mode;
+
+	/**
+	 * 重建失败后的最大重试次数
+	 */
+	private final int maxRetries;
+
+	/**
+	 * 第一次重试的等待时间，之后每次翻倍，单位毫秒
+	 */
+	private final long retryBackoffMillis;
+
+	/**
+	 * 第二次维护的延迟时间，应大于一次缓存重建的耗时，0表示不做第二次维护，单位毫秒
+	 */
+	private final long secondPassDelayMillis;
+
+	public CacheRefresher(CacheClient cacheClient,
+						  @Value("${hmdp.cache.write.mode:refresh}") String mode,
+						  @Value("${hmdp.cache.write.max-retries:3}") int maxRetries,
+						  @Value("${hmdp.cache.write.retry-backoff:100}") long retryBackoffMillis,
+						  @Value("${hmdp.cache.write.second-pass-delay:1000}") long secondPassDelayMillis) {
+		this.cacheClient = cacheClient;
+		this.mode = mode;
+		this.maxRetries = maxRetries;
+		this.retryBackoffMillis = retryBackoffMillis;
+		this.secondPassDelayMillis = secondPassDelayMillis;
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.scheduler = new ScheduledThreadPoolExecutor(2, r -> {
+			Thread thread = new Thread(r, "cache-refresh-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * 数据更新后维护缓存，有事务时在事务提交后执行，没有事务时立即执行
+	 *
+	 * @param keyPrefix  缓存key的前缀
+	 * @param id         数据id
+	 * @param dbFallback 查询数据库函数
+	 * @param time       逻辑过期时间
+	 * @param unit       时间单位
+	 */
+	public <R, ID> void refreshAfterCommit(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+		afterCommit(() -> refresh(keyPrefix, id, dbFallback, time, unit, 0));
+	}
+
+	/**
+	 * 数据更新后删除缓存（延迟双删），不受维护方式影响，用于缓存不存在时会查询数据库的缓存
+	 *
+	 * @param key 缓存key
+	 */
+	public void deleteAfterCommit(String key) {
+		afterCommit(() -> {
+			try {
+				cacheClient.delete(key);
+			} catch (Exception e) {
+				log.error("写路径删除缓存失败：{}", key, e);
+			}
+		});
+	}
+
+	/**
+	 * 事务提交后执行一次，延迟 secondPassDelayMillis 后再执行一次
+	 */
+	private void afterCommit(Runnable task) {
+		Runnable refresh = () -> {
+			scheduler.execute(task);
+			if (secondPassDelayMillis > 0) {
+				scheduler.schedule(task, secondPassDelayMillis, TimeUnit.MILLISECONDS);
+			}
+		};
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					refresh.run();
+				}
+			});
+		} else {
+			refresh.run();
+		}
+	}
+
+	private <R, ID> void refresh(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit,
+								 int attempt) {
+		String key = keyPrefix + id;
+		try {
+			if (MODE_DELETE.equals(mode)) {
+				cacheClient.delete(key);
+				return;
+			}
+			long begin = System.nanoTime();
+			R r = dbFallback.apply(id);
+			if (r == null) {
+				// 数据已被删除
+				cacheClient.delete(key);
+				return;
+			}
+			// 记录查询数据库的耗时，逻辑过期查询据此提前刷新
+			int rebuildMillis = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+			cacheClient.setWithLogicExpire(key, r, time, unit, rebuildMillis);
+			// 本地缓存中的旧数据已失效
+			cacheClient.invalidateLocal(key);
+		} catch (Exception e) {
+			if (attempt >= maxRetries) {
+				log.error("写路径缓存维护失败：{}，已重试{}次", key, attempt, e);
+				return;
+			}
+			long backoff = retryBackoffMillis << attempt;
+			log.warn("写路径缓存维护失败：{}，{}ms后重试", key, backoff, e);
+			scheduler.schedule(() -> refresh(keyPrefix, id, dbFallback, time, unit, attempt + 1),
+					backoff, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+}
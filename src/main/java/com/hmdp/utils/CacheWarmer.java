@@ -0,0 +1,269 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 缓存预热：分页读取注册的数据表，使用管道批量写入逻辑过期缓存
+ * 说明：逻辑过期缓存未命中时视为数据不存在，redis 清空或新集群上线后必须先预热，预热完成之前 isReady 返回false；
+ * 任一数据表预热失败时保持未就绪，通过管理端重新预热
+ */
+@Slf4j
+@Component
+public class CacheWarmer implements ApplicationRunner {
+
+	/**
+	 * 未指定重建耗时，使用 CacheClient 的默认重建耗时
+	 */
+	private static final int DEFAULT_REBUILD_MILLIS = -1;
+
+	private final CacheClient cacheClient;
+
+	/**
+	 * 是否在应用启动时预热
+	 */
+	private final boolean enabled;
+
+	/**
+	 * 每页读取的数据量
+	 */
+	private final int pageSize;
+
+	private final List<WarmupTask<?>> tasks = new CopyOnWriteArrayList<>();
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	private volatile boolean ready;
+
+	public CacheWarmer(CacheClient cacheClient,
+					   @Value("${hmdp.cache.warmup.enabled:true}") boolean enabled,
+					   @Value("${hmdp.cache.warmup.page-size:1000}") int pageSize) {
+		this.cacheClient = cacheClient;
+		this.enabled = enabled;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * 注册需要预热的数据表，按 CacheClient 的默认重建耗时写入
+	 *
+	 * @param keyPrefix  缓存key的前缀
+	 * @param pageLoader 分页查询函数，参数为上一页最后一个id和每页数量，返回按id升序的下一页
+	 * @param idGetter   获取数据id的函数
+	 * @param time       逻辑过期时间
+	 * @param unit       时间单位
+	 */
+	public <R> void register(String keyPrefix, PageLoader<R> pageLoader, Function<R, Long> idGetter,
+							 Long time, TimeUnit unit) {
+		register(keyPrefix, pageLoader, idGetter, time, unit, DEFAULT_REBUILD_MILLIS);
+	}
+
+	/**
+	 * 注册需要预热的数据表
+	 *
+	 * @param keyPrefix     缓存key的前缀
+	 * @param pageLoader    分页查询函数，参数为上一页最后一个id和每页数量，返回按id升序的下一页
+	 * @param idGetter      获取数据id的函数
+	 * @param time          逻辑过期时间
+	 * @param unit          时间单位
+	 * @param rebuildMillis 该数据表单条数据的重建耗时，单位毫秒，预热的数据据此提前刷新
+	 */
+	public <R> void register(String keyPrefix, PageLoader<R> pageLoader, Function<R, Long> idGetter,
+							 Long time, TimeUnit unit, int rebuildMillis) {
+		tasks.add(new WarmupTask<>(keyPrefix, pageLoader, idGetter, time, unit, rebuildMillis));
+	}
+
+	/**
+	 * 预热是否完成
+	 *
+	 * @return boolean
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * 各数据表的预热进度
+	 *
+	 * @return 预热进度
+	 */
+	public List<Progress> getProgress() {
+		return tasks.stream().map(task -> task.progress).collect(Collectors.toList());
+	}
+
+	/**
+	 * 应用启动后异步预热，未开启预热时直接就绪
+	 */
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!enabled) {
+			ready = true;
+			return;
+		}
+		warmupAsync();
+	}
+
+	/**
+	 * 异步预热所有注册的数据表
+	 *
+	 * @return 已有预热在执行时返回false
+	 */
+	public boolean warmupAsync() {
+		if (!running.compareAndSet(false, true)) {
+			return false;
+		}
+		Thread thread = new Thread(() -> {
+			try {
+				boolean success = true;
+				for (WarmupTask<?> task : tasks) {
+					success &= warmup(task);
+				}
+				if (success) {
+					ready = true;
+				} else if (!ready) {
+					// 未预热的数据会被当作不存在，保持未就绪，由网关把请求转发到其他节点
+					log.error("缓存预热未全部完成，节点保持未就绪，可通过 POST /admin/cache/warmup 重新预热");
+				}
+			} finally {
+				running.set(false);
+			}
+		}, "cache-warmup");
+		thread.setDaemon(true);
+		thread.start();
+		return true;
+	}
+
+	/**
+	 * @return 是否预热成功
+	 */
+	private <R> boolean warmup(WarmupTask<R> task) {
+		Progress progress = task.progress;
+		progress.start();
+		try {
+			long lastId = 0;
+			List<R> page;
+			while (!(page = task.pageLoader.load(lastId, pageSize)).isEmpty()) {
+				if (task.rebuildMillis == DEFAULT_REBUILD_MILLIS) {
+					cacheClient.setBatchWithLogicExpire(task.keyPrefix, page, task.idGetter, task.time, task.unit);
+				} else {
+					cacheClient.setBatchWithLogicExpire(task.keyPrefix, page, task.idGetter, task.time, task.unit,
+							task.rebuildMillis);
+				}
+				progress.loaded.addAndGet(page.size());
+				lastId = task.idGetter.apply(page.get(page.size() - 1));
+			}
+			progress.finish(Progress.DONE);
+			log.info("缓存预热完成：{}，数据量：{}，耗时：{}ms，吞吐量：{}条/秒", task.keyPrefix,
+					progress.getLoaded(), progress.getElapsedMillis(), progress.getThroughput());
+			return true;
+		} catch (Exception e) {
+			progress.finish(Progress.FAILED);
+			log.error("缓存预热失败：{}，已预热：{}", task.keyPrefix, progress.getLoaded(), e);
+			return false;
+		}
+	}
+
+	/**
+	 * 分页查询函数
+	 */
+	@FunctionalInterface
+	public interface PageLoader<R> {
+
+		/**
+		 * @param lastId   上一页最后一个id，第一页为0
+		 * @param pageSize 每页数量
+		 * @return 按id升序的下一页，没有数据时返回空集合
+		 */
+		List<R> load(long lastId, int pageSize);
+	}
+
+	private static class WarmupTask<R> {
+
+		private final String keyPrefix;
+		private final PageLoader<R> pageLoader;
+		private final Function<R, Long> idGetter;
+		private final Long time;
+		private final TimeUnit unit;
+		private final int rebuildMillis;
+		private final Progress progress;
+
+		WarmupTask(String keyPrefix, PageLoader<R> pageLoader, Function<R, Long> idGetter, Long time, TimeUnit unit,
+				   int rebuildMillis) {
+			this.keyPrefix = keyPrefix;
+			this.pageLoader = pageLoader;
+			this.idGetter = idGetter;
+			this.time = time;
+			this.unit = unit;
+			this.rebuildMillis = rebuildMillis;
+			this.progress = new Progress(keyPrefix);
+		}
+	}
+
+	/**
+	 * 预热进度
+	 */
+	@Getter
+	public static class Progress {
+
+		static final String WAITING = "WAITING";
+		static final String RUNNING = "RUNNING";
+		static final String DONE = "DONE";
+		static final String FAILED = "FAILED";
+
+		private final String keyPrefix;
+
+		private volatile String state = WAITING;
+
+		private final AtomicLong loaded = new AtomicLong();
+
+		private volatile long startTime;
+
+		private volatile long endTime;
+
+		Progress(String keyPrefix) {
+			this.keyPrefix = keyPrefix;
+		}
+
+		void start() {
+			loaded.set(0);
+			startTime = System.currentTimeMillis();
+			endTime = 0;
+			state = RUNNING;
+		}
+
+		void finish(String state) {
+			endTime = System.currentTimeMillis();
+			this.state = state;
+		}
+
+		public long getLoaded() {
+			return loaded.get();
+		}
+
+		public long getElapsedMillis() {
+			if (startTime == 0) {
+				return 0;
+			}
+			return (endTime == 0 ? System.currentTimeMillis() : endTime) - startTime;
+		}
+
+		/**
+		 * 吞吐量，单位：条/秒
+		 */
+		public long getThroughput() {
+			long elapsed = getElapsedMillis();
+			return elapsed == 0 ? 0 : loaded.get() * 1000 / elapsed;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.hmdp.utils;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * hash 缓存中单独存储的计数器字段，可以使用 HINCRBY 单独更新
+ */
+public final class CounterField<R> {
+
+	private final String name;
+
+	private final Function<R, ? extends Number> getter;
+
+	private final BiConsumer<R, Long> setter;
+
+	private CounterField(String name, Function<R, ? extends Number> getter, BiConsumer<R, Long> setter) {
+		this.name = name;
+		this.getter = getter;
+		this.setter = setter;
+	}
+
+	/**
+	 * @param name   hash 字段名
+	 * @param getter 读取实体中的计数器
+	 * @param setter 将 hash 字段的值写回实体
+	 */
+	public static <R> CounterField<R> of(String name, Function<R, ? extends Number> getter, BiConsumer<R, Long> setter) {
+		return new CounterField<>(name, getter, setter);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	Number get(R r) {
+		return getter.apply(r);
+	}
+
+	void set(R r, Long value) {
+		setter.accept(r, value);
+	}
+}
@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 缓存过期策略，解决缓存雪崩
+ * 说明：在过期时间（TTL 和逻辑过期时间）上叠加有界随机抖动，同一批写入的key不会在同一时刻过期。
+ * 默认抖动范围为 [1 - jitterRatio, 1 + jitterRatio] 倍，可以按 key 前缀注册不同的抖动范围
+ */
+@Component
+public class ExpiryPolicy {
+
+	/**
+	 * 直方图统计的倍数范围 [0.5, 1.5)，每 5% 一个桶，两端各加一个溢出桶
+	 */
+	private static final double HISTOGRAM_MIN = 0.5;
+	private static final double HISTOGRAM_STEP = 0.05;
+	private static final int HISTOGRAM_BUCKETS = 20;
+
+	/**
+	 * 默认抖动范围
+	 */
+	private final Band defaultBand;
+
+	/**
+	 * 按 key 前缀注册的抖动范围
+	 */
+	private final Map<String, Band> bands = new ConcurrentHashMap<>();
+
+	/**
+	 * 按 key 前缀统计实际过期时间与基准过期时间的倍数分布
+	 */
+	private final Map<String, AtomicLongArray> histograms = new ConcurrentHashMap<>();
+
+	public ExpiryPolicy(@Value("${hmdp.cache.expiry.jitter-ratio:0.1}") double jitterRatio) {
+		this.defaultBand = new Band(1 - jitterRatio, 1 + jitterRatio);
+	}
+
+	/**
+	 * 为指定前缀的key注册抖动范围，实际过期时间在 [time * minRatio, time * maxRatio] 之间均匀分布
+	 *
+	 * @param keyPrefix 缓存key的前缀
+	 * @param minRatio  最小倍数
+	 * @param maxRatio  最大倍数
+	 */
+	public void registerBand(String keyPrefix, double minRatio, double maxRatio) {
+		bands.put(keyPrefix, new Band(minRatio, maxRatio));
+	}
+
+	/**
+	 * 计算叠加抖动后的过期时间
+	 *
+	 * @param key        缓存key
+	 * @param baseMillis 基准过期时间（毫秒）
+	 * @return 实际过期时间（毫秒）
+	 */
+	public long ttlMillis(String key, long baseMillis) {
+		String prefix = prefixOf(key);
+		Band band = bands.getOrDefault(prefix, defaultBand);
+		double ratio = band.minRatio == band.maxRatio
+				? band.minRatio
+				: ThreadLocalRandom.current().nextDouble(band.minRatio, band.maxRatio);
+		record(prefix, ratio);
+		return Math.max(1, (long) (baseMillis * ratio));
+	}
+
+	/**
+	 * 过期时间分布直方图
+	 *
+	 * @return key：缓存key前缀，value：倍数区间 -> 次数
+	 */
+	public Map<String, Map<String, Long>> getHistograms() {
+		Map<String, Map<String, Long>> result = new TreeMap<>();
+		histograms.forEach((prefix, counts) -> {
+			Map<String, Long> buckets = new LinkedHashMap<>();
+			for (int i = 0; i < counts.length(); i++) {
+				long count = counts.get(i);
+				if (count > 0) {
+					buckets.put(bucketName(i), count);
+				}
+			}
+			result.put(prefix, buckets);
+		});
+		return result;
+	}
+
+	private void record(String prefix, double ratio) {
+		int bucket;
+		if (ratio < HISTOGRAM_MIN) {
+			bucket = 0;
+		} else {
+			bucket = Math.min(HISTOGRAM_BUCKETS + 1, 1 + (int) ((ratio - HISTOGRAM_MIN) / HISTOGRAM_STEP));
+		}
+		histograms.computeIfAbsent(prefix, k -> new AtomicLongArray(HISTOGRAM_BUCKETS + 2)).incrementAndGet(bucket);
+	}
+
+	private static String bucketName(int bucket) {
+		if (bucket == 0) {
+			return "<" + String.format("%.2f", HISTOGRAM_MIN);
+		}
+		double from = HISTOGRAM_MIN + (bucket - 1) * HISTOGRAM_STEP;
+		if (bucket == HISTOGRAM_BUCKETS + 1) {
+			return ">=" + String.format("%.2f", from);
+		}
+		return String.format("%.2f-%.2f", from, from + HISTOGRAM_STEP);
+	}
+
+	/**
+	 * key 的前缀，即最后一个':'之前的部分，例如 cache:shop:1 -> cache:shop:
+	 */
+	private static String prefixOf(String key) {
+		return key.substring(0, key.lastIndexOf(':') + 1);
+	}
+
+	private static class Band {
+
+		private final double minRatio;
+
+		private final double maxRatio;
+
+		Band(double minRatio, double maxRatio) {
+			this.minRatio = minRatio;
+			this.maxRatio = maxRatio;
+		}
+	}
+}
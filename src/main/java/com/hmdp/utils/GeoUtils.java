@@ -0,0 +1,64 @@
+package com.hmdp.utils;
+
+/**
+ * 经纬度距离计算（haversine 公式）
+ * 说明：地球半径与 redis GEO 一致，计算结果与 GEODIST 相同；批量计算时坐标预先转换为弧度并缓存纬度的余弦，
+ * 不调用 Math.pow，不分配对象
+ */
+public final class GeoUtils {
+
+	/**
+	 * 地球半径，单位米，与 redis 的 EARTH_RADIUS_IN_METERS 一致
+	 */
+	public static final double EARTH_RADIUS_METERS = 6372797.560856;
+
+	/**
+	 * 每度纬度对应的距离，单位米
+	 */
+	public static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+	private GeoUtils() {
+	}
+
+	/**
+	 * 计算两点间的距离
+	 *
+	 * @param longitude1 第一个点的经度
+	 * @param latitude1  第一个点的纬度
+	 * @param longitude2 第二个点的经度
+	 * @param latitude2  第二个点的纬度
+	 * @return 距离，单位米
+	 */
+	public static double distance(double longitude1, double latitude1, double longitude2, double latitude2) {
+		double lat1 = Math.toRadians(latitude1);
+		double lat2 = Math.toRadians(latitude2);
+		return haversine(Math.toRadians(longitude1), lat1, Math.cos(lat1),
+				Math.toRadians(longitude2), lat2, Math.cos(lat2));
+	}
+
+	/**
+	 * 批量计算一个点到多个点的距离，坐标均为弧度
+	 *
+	 * @param lng    起点经度（弧度）
+	 * @param lat    起点纬度（弧度）
+	 * @param cosLat 起点纬度的余弦
+	 * @param lngs   终点经度（弧度）
+	 * @param lats   终点纬度（弧度）
+	 * @param cosLats 终点纬度的余弦
+	 * @param n      终点数量
+	 * @param out    距离输出，单位米，长度不小于 n
+	 */
+	public static void distances(double lng, double lat, double cosLat,
+								 double[] lngs, double[] lats, double[] cosLats, int n, double[] out) {
+		for (int i = 0; i < n; i++) {
+			out[i] = haversine(lng, lat, cosLat, lngs[i], lats[i], cosLats[i]);
+		}
+	}
+
+	private static double haversine(double lng1, double lat1, double cosLat1, double lng2, double lat2, double cosLat2) {
+		double sinLat = Math.sin((lat2 - lat1) / 2);
+		double sinLng = Math.sin((lng2 - lng1) / 2);
+		double a = sinLat * sinLat + cosLat1 * cosLat2 * sinLng * sinLng;
+		return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+	}
+}
@@ -0,0 +1,253 @@
+package com.hmdp.utils;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 热点key探测
+ * 说明：
+ * 1.使用滑动窗口的 Count-Min Sketch 估算每个key在最近一个窗口内的访问次数，内存占用固定，与key的数量无关
+ * 2.窗口按时间分为多个分片，每个分片过期时从窗口总计数中减去该分片的计数
+ * 3.使用小顶堆维护访问次数最多的 topK 个key，用于管理端展示
+ * 4.访问次数超过阈值的key标记为热点，由 CacheClient 写入进程内的短时副本，热点读请求不再访问 redis
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+	/**
+	 * 每个key映射到的计数器行数
+	 */
+	private static final int DEPTH = 4;
+
+	/**
+	 * 已在堆中的key，访问次数比堆中记录的值增长 1/2^UPDATE_SHIFT 以上时才更新堆
+	 */
+	private static final int UPDATE_SHIFT = 4;
+
+	private final boolean enabled;
+
+	/**
+	 * 每行的计数器数量，2的幂
+	 */
+	private final int width;
+
+	/**
+	 * 窗口内访问次数达到该值的key视为热点
+	 */
+	private final int threshold;
+
+	private final int topK;
+
+	/**
+	 * 窗口分片，每个分片记录一个时间段内的访问次数
+	 */
+	private final AtomicIntegerArray[] slices;
+
+	/**
+	 * 整个窗口的访问次数，等于所有分片之和
+	 */
+	private final AtomicIntegerArray window;
+
+	private volatile int current;
+
+	/**
+	 * 当前的热点key，value：被标记为热点的时间
+	 */
+	private final Map<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+	/**
+	 * 访问次数最多的 topK 个key，小顶堆 + 索引
+	 * 说明：索引可以不加锁读取；不在堆中的key访问次数超过堆顶时、在堆中的key访问次数比记录值增长约 1/16 时才加锁更新，
+	 * 其余访问不加锁，堆中的访问次数最多落后 1/16，每次窗口滑动时重新估算
+	 */
+	private final PriorityQueue<HotKey> heap = new PriorityQueue<>(Comparator.comparingInt(HotKey::getCount));
+	private final Map<String, HotKey> heapIndex = new ConcurrentHashMap<>();
+	private volatile int heapMin;
+
+	public HotKeyDetector(@Value("${hmdp.cache.hot-key.enabled:true}") boolean enabled,
+						  @Value("${hmdp.cache.hot-key.width:4096}") int width,
+						  @Value("${hmdp.cache.hot-key.slices:6}") int slices,
+						  @Value("${hmdp.cache.hot-key.threshold:1000}") int threshold,
+						  @Value("${hmdp.cache.hot-key.top-k:20}") int topK) {
+		this.enabled = enabled;
+		this.width = Integer.highestOneBit(Math.max(width, 16));
+		this.threshold = threshold;
+		this.topK = topK;
+		this.slices = new AtomicIntegerArray[slices];
+		for (int i = 0; i < slices; i++) {
+			this.slices[i] = new AtomicIntegerArray(DEPTH * this.width);
+		}
+		this.window = new AtomicIntegerArray(DEPTH * this.width);
+	}
+
+	/**
+	 * 记录一次访问
+	 *
+	 * @param key 缓存key
+	 * @return 该key是否为热点
+	 */
+	public boolean record(String key) {
+		if (!enabled) {
+			return false;
+		}
+		long h1 = mix(key.hashCode());
+		long h2 = mix(h1) | 1;
+		AtomicIntegerArray slice = slices[current];
+		int estimate = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = i * width + (int) ((h1 + i * h2) & (width - 1));
+			slice.incrementAndGet(index);
+			estimate = Math.min(estimate, window.incrementAndGet(index));
+		}
+		HotKey tracked = heapIndex.get(key);
+		if (tracked != null ? estimate - tracked.count > tracked.count >>> UPDATE_SHIFT : estimate > heapMin) {
+			offer(key, estimate);
+		}
+		if (estimate >= threshold) {
+			// 已经是热点时只读取，不进入 putIfAbsent 的加锁路径
+			if (!hotKeys.containsKey(key) && hotKeys.putIfAbsent(key, System.currentTimeMillis()) == null) {
+				log.info("发现热点key：{}，窗口内访问次数：{}", key, estimate);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 是否为热点key
+	 *
+	 * @param key 缓存key
+	 * @return boolean
+	 */
+	public boolean isHot(String key) {
+		return hotKeys.containsKey(key);
+	}
+
+	/**
+	 * 访问次数最多的key，按访问次数倒序
+	 *
+	 * @return 热点key列表
+	 */
+	public List<HotKey> getTopKeys() {
+		List<HotKey> result;
+		synchronized (heap) {
+			result = new ArrayList<>(heap.size());
+			heap.forEach(hotKey -> result.add(new HotKey(hotKey.key, hotKey.count, hotKeys.containsKey(hotKey.key))));
+		}
+		result.sort(Comparator.comparingInt(HotKey::getCount).reversed());
+		return result;
+	}
+
+	/**
+	 * 窗口滑动：最旧的分片过期，从窗口中减去它的计数后清空，作为新的当前分片；
+	 * 重新估算堆中key的访问次数，访问次数低于阈值的热点key降级
+	 */
+	@Scheduled(fixedRateString = "${hmdp.cache.hot-key.slice-millis:10000}")
+	public void slide() {
+		if (!enabled) {
+			return;
+		}
+		int next = (current + 1) % slices.length;
+		AtomicIntegerArray expired = slices[next];
+		for (int i = 0; i < expired.length(); i++) {
+			int count = expired.getAndSet(i, 0);
+			if (count != 0) {
+				window.addAndGet(i, -count);
+			}
+		}
+		current = next;
+
+		synchronized (heap) {
+			List<HotKey> entries = new ArrayList<>(heap);
+			heap.clear();
+			heapIndex.clear();
+			for (HotKey entry : entries) {
+				entry.count = estimate(entry.key);
+				if (entry.count > 0) {
+					heap.add(entry);
+					heapIndex.put(entry.key, entry);
+				}
+			}
+			heapMin = heap.size() < topK ? 0 : heap.peek().count;
+		}
+		hotKeys.keySet().removeIf(key -> {
+			if (estimate(key) >= threshold) {
+				return false;
+			}
+			log.info("热点key降级：{}", key);
+			return true;
+		});
+	}
+
+	private int estimate(String key) {
+		long h1 = mix(key.hashCode());
+		long h2 = mix(h1) | 1;
+		int estimate = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			estimate = Math.min(estimate, window.get(i * width + (int) ((h1 + i * h2) & (width - 1))));
+		}
+		return estimate;
+	}
+
+	private void offer(String key, int count) {
+		synchronized (heap) {
+			HotKey entry = heapIndex.get(key);
+			if (entry != null) {
+				heap.remove(entry);
+				entry.count = count;
+				heap.add(entry);
+			} else {
+				entry = new HotKey(key, count, false);
+				heap.add(entry);
+				heapIndex.put(key, entry);
+				if (heap.size() > topK) {
+					heapIndex.remove(heap.poll().key);
+				}
+			}
+			heapMin = heap.size() < topK ? 0 : heap.peek().count;
+		}
+	}
+
+	/**
+	 * SplitMix64 的混淆函数，与 IdBloomFilter 一致
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * 热点key及其窗口内的估算访问次数
+	 */
+	@Getter
+	public static class HotKey {
+
+		private final String key;
+
+		private volatile int count;
+
+		/**
+		 * 是否已提升为进程内副本
+		 */
+		private final boolean promoted;
+
+		HotKey(String key, int count, boolean promoted) {
+			this.key = key;
+			this.count = count;
+			this.promoted = promoted;
+		}
+	}
+}
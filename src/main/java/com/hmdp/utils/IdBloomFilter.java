@@ -0,0 +1,406 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_KEY;
+
+/**
+ * 基于主键id的布隆过滤器，位图可以保存在本地内存或 redis 中
+ * 说明：判断不存在的id一定不存在，判断存在的id有一定误判率
+ */
+public class IdBloomFilter {
+
+	/**
+	 * 全量构建时每批处理的id数量
+	 */
+	private static final int BUILD_BATCH_SIZE = 1000;
+
+	private final String name;
+
+	/**
+	 * 位图长度
+	 */
+	private final long numBits;
+
+	/**
+	 * 哈希函数个数
+	 */
+	private final int numHashes;
+
+	/**
+	 * 分页查询id的函数，参数为上一页最后一个id，返回按id升序的下一页
+	 */
+	private final Function<Long, List<Long>> idPageLoader;
+
+	/**
+	 * 位图存储：本地内存或 redis
+	 */
+	private final Bits bits;
+
+	/**
+	 * 全量构建完成之前，过滤器不做拦截
+	 */
+	private volatile boolean ready;
+
+	/**
+	 * @param name               过滤器名称
+	 * @param expectedInsertions 预计元素个数
+	 * @param fpp                期望误判率
+	 * @param idPageLoader       分页查询id的函数
+	 * @param stringRedisTemplate 为null时位图保存在本地内存
+	 */
+	public IdBloomFilter(String name, long expectedInsertions, double fpp,
+						 Function<Long, List<Long>> idPageLoader, StringRedisTemplate stringRedisTemplate) {
+		this.name = name;
+		this.numBits = Math.max(64, (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+		this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+		this.idPageLoader = idPageLoader;
+		this.bits = stringRedisTemplate == null
+				? new LocalBits(numBits)
+				: new RedisBits(stringRedisTemplate, BLOOM_FILTER_KEY + name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * 判断id是否可能存在，构建完成之前一律返回true
+	 * 说明：redis 位图被清空或淘汰后，所有id都会判断为不存在；判断不存在时确认位图仍然存在，
+	 * 位图丢失时恢复为未就绪状态、不做拦截，由调用方触发重建
+	 *
+	 * @param id 主键id
+	 * @return false：一定不存在
+	 */
+	public boolean mightContain(long id) {
+		if (!ready || bits.allSet(offsets(id))) {
+			return true;
+		}
+		if (bits.lost()) {
+			ready = false;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 新增id
+	 *
+	 * @param id 主键id
+	 */
+	public void put(long id) {
+		bits.set(offsets(id));
+	}
+
+	/**
+	 * 全量构建：分页读取所有id写入新位图，完成后替换旧位图
+	 * 说明：构建期间新增的id会同时写入新旧位图，不会丢失；redis 位图由重建锁保证同一时间只有一个节点在重建
+	 *
+	 * @return 写入的id数量，其他节点正在重建时返回-1
+	 */
+	public synchronized long rebuild() {
+		if (!bits.beginRebuild()) {
+			return -1;
+		}
+		long count = 0;
+		try {
+			long lastId = 0;
+			List<Long> ids;
+			while (!(ids = idPageLoader.apply(lastId)).isEmpty()) {
+				for (int from = 0; from < ids.size(); from += BUILD_BATCH_SIZE) {
+					List<Long> batch = ids.subList(from, Math.min(from + BUILD_BATCH_SIZE, ids.size()));
+					long[] offsets = new long[batch.size() * numHashes];
+					for (int i = 0; i < batch.size(); i++) {
+						System.arraycopy(offsets(batch.get(i)), 0, offsets, i * numHashes, numHashes);
+					}
+					bits.setRebuilding(offsets);
+				}
+				count += ids.size();
+				lastId = ids.get(ids.size() - 1);
+			}
+			bits.commitRebuild();
+		} catch (RuntimeException e) {
+			bits.abortRebuild();
+			throw e;
+		}
+		ready = true;
+		return count;
+	}
+
+	/**
+	 * 从 redis 中恢复已存在的位图，其他节点已构建时不必重复构建
+	 *
+	 * @return 是否恢复成功
+	 */
+	public boolean restore() {
+		if (bits.exists()) {
+			ready = true;
+		}
+		return ready;
+	}
+
+	/**
+	 * 计算id在位图中的k个位置（双重哈希）
+	 */
+	private long[] offsets(long id) {
+		long h1 = mix(id);
+		long h2 = mix(h1) | 1;
+		long[] offsets = new long[numHashes];
+		for (int i = 0; i < numHashes; i++) {
+			offsets[i] = ((h1 + i * h2) & Long.MAX_VALUE) % numBits;
+		}
+		return offsets;
+	}
+
+	/**
+	 * 64位哈希混淆（SplitMix64）
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * 位图存储
+	 */
+	private interface Bits {
+
+		boolean allSet(long[] offsets);
+
+		void set(long[] offsets);
+
+		boolean exists();
+
+		/**
+		 * @return true：已构建的位图已经不存在
+		 */
+		boolean lost();
+
+		/**
+		 * @return false：其他节点正在重建
+		 */
+		boolean beginRebuild();
+
+		void setRebuilding(long[] offsets);
+
+		void commitRebuild();
+
+		void abortRebuild();
+	}
+
+	/**
+	 * 本地内存位图
+	 */
+	private static class LocalBits implements Bits {
+
+		private final int words;
+
+		private volatile AtomicLongArray current;
+
+		private volatile AtomicLongArray building;
+
+		LocalBits(long numBits) {
+			this.words = (int) ((numBits + 63) >>> 6);
+			this.current = new AtomicLongArray(words);
+		}
+
+		@Override
+		public boolean allSet(long[] offsets) {
+			AtomicLongArray array = current;
+			for (long offset : offsets) {
+				if ((array.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void set(long[] offsets) {
+			setBits(current, offsets);
+			AtomicLongArray next = building;
+			if (next != null) {
+				setBits(next, offsets);
+			}
+		}
+
+		@Override
+		public boolean exists() {
+			return false;
+		}
+
+		@Override
+		public boolean lost() {
+			return false;
+		}
+
+		@Override
+		public boolean beginRebuild() {
+			building = new AtomicLongArray(words);
+			return true;
+		}
+
+		@Override
+		public void setRebuilding(long[] offsets) {
+			setBits(building, offsets);
+		}
+
+		@Override
+		public void commitRebuild() {
+			current = building;
+			building = null;
+		}
+
+		@Override
+		public void abortRebuild() {
+			building = null;
+		}
+
+		private static void setBits(AtomicLongArray array, long[] offsets) {
+			for (long offset : offsets) {
+				int index = (int) (offset >>> 6);
+				long mask = 1L << offset;
+				long word;
+				while (((word = array.get(index)) & mask) == 0 && !array.compareAndSet(index, word, word | mask)) {
+					// CAS 失败重试
+				}
+			}
+		}
+	}
+
+	/**
+	 * redis 位图，k 次 GETBIT 通过管道一次往返完成，SETBIT 通过脚本一次往返完成
+	 * 说明：重建期间新位图一直存在，所有节点的新增id都会同时写入新旧位图；是否在重建以 redis 中新位图是否存在为准，而不是当前节点的状态。
+	 * 新增id只写入已存在的位图，位图丢失后不会被新增id重新创建为只包含少量id的位图
+	 */
+	private static class RedisBits implements Bits {
+
+		/**
+		 * 重建锁的有效时间，每写入一批id续期一次
+		 */
+		private static final long REBUILD_LOCK_TTL_MILLIS = 60_000;
+
+		private static final DefaultRedisScript<Long> SET_SCRIPT;
+
+		private static final DefaultRedisScript<Long> REBUILD_SCRIPT;
+
+		static {
+			SET_SCRIPT = new DefaultRedisScript<>();
+			SET_SCRIPT.setLocation(new ClassPathResource("bloom_set.lua"));
+			SET_SCRIPT.setResultType(Long.class);
+			REBUILD_SCRIPT = new DefaultRedisScript<>();
+			REBUILD_SCRIPT.setLocation(new ClassPathResource("bloom_rebuild.lua"));
+			REBUILD_SCRIPT.setResultType(Long.class);
+		}
+
+		private final StringRedisTemplate stringRedisTemplate;
+
+		private final String key;
+
+		private final List<String> writeKeys;
+
+		private final List<String> rebuildKeys;
+
+		/**
+		 * 当前节点本次重建持有的锁标识
+		 */
+		private String token;
+
+		RedisBits(StringRedisTemplate stringRedisTemplate, String key) {
+			this.stringRedisTemplate = stringRedisTemplate;
+			this.key = key;
+			String buildingKey = key + ":building";
+			this.writeKeys = Arrays.asList(key, buildingKey);
+			this.rebuildKeys = Arrays.asList(key + ":lock", buildingKey, key);
+		}
+
+		@Override
+		public boolean allSet(long[] offsets) {
+			List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+				StringRedisConnection conn = (StringRedisConnection) connection;
+				for (long offset : offsets) {
+					conn.getBit(key, offset);
+				}
+				return null;
+			});
+			for (Object result : results) {
+				if (!Boolean.TRUE.equals(result)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void set(long[] offsets) {
+			stringRedisTemplate.execute(SET_SCRIPT, writeKeys, toArgs(offsets, 0));
+		}
+
+		@Override
+		public boolean exists() {
+			return Boolean.TRUE.equals(stringRedisTemplate.hasKey(key));
+		}
+
+		@Override
+		public boolean lost() {
+			return !exists();
+		}
+
+		@Override
+		public boolean beginRebuild() {
+			token = UUID.randomUUID().toString(true);
+			return rebuild("begin", new long[0]);
+		}
+
+		@Override
+		public void setRebuilding(long[] offsets) {
+			if (!rebuild("add", offsets)) {
+				throw new IllegalStateException("布隆过滤器重建锁已失效：" + key);
+			}
+		}
+
+		@Override
+		public void commitRebuild() {
+			if (!rebuild("commit", new long[0])) {
+				throw new IllegalStateException("布隆过滤器重建锁已失效：" + key);
+			}
+		}
+
+		@Override
+		public void abortRebuild() {
+			rebuild("abort", new long[0]);
+		}
+
+		private boolean rebuild(String action, long[] offsets) {
+			Object[] args = toArgs(offsets, 3);
+			args[0] = action;
+			args[1] = token;
+			args[2] = String.valueOf(REBUILD_LOCK_TTL_MILLIS);
+			Long result = stringRedisTemplate.execute(REBUILD_SCRIPT, rebuildKeys, args);
+			return result != null && result == 1;
+		}
+
+		private static Object[] toArgs(long[] offsets, int reserved) {
+			Object[] args = new Object[reserved + offsets.length];
+			for (int i = 0; i < offsets.length; i++) {
+				args[reserved + i] = String.valueOf(offsets[i]);
+			}
+			return args;
+		}
+	}
+}
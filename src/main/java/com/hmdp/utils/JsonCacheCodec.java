@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * json 编解码器，兼容已有的缓存格式：普通缓存为对象json，逻辑过期缓存为 RedisData 的json
+ * 说明：优先级最低，其他编解码器不支持时使用
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class JsonCacheCodec implements CacheCodec {
+
+	private static final String EXPIRE_TIME = "expireTime";
+
+	private static final String DATA = "data";
+
+	private static final String REBUILD_MILLIS = "rebuildMillis";
+
+	@Override
+	public boolean canEncode(Class<?> type) {
+		return true;
+	}
+
+	@Override
+	public boolean canDecode(byte[] raw) {
+		return true;
+	}
+
+	@Override
+	public byte[] encode(Object value, long expireMillis, int rebuildMillis) {
+		if (expireMillis == NO_EXPIRE) {
+			return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+		}
+		RedisData redisData = new RedisData();
+		redisData.setData(value);
+		redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireMillis), ZoneId.systemDefault()));
+		redisData.setRebuildMillis(rebuildMillis);
+		return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public long readExpireMillis(byte[] raw) {
+		return readExpireMillis(parse(raw));
+	}
+
+	@Override
+	public int readRebuildMillis(byte[] raw) {
+		return readRebuildMillis(parse(raw));
+	}
+
+	@Override
+	public <R> R decode(byte[] raw, Class<R> type) {
+		return decode(parse(raw), type);
+	}
+
+	/**
+	 * 只解析一次json，读取值、逻辑过期时间戳和重建耗时
+	 */
+	@Override
+	public <R> Decoded<R> decodeEntry(byte[] raw, Class<R> type) {
+		JSONObject json = parse(raw);
+		return new Decoded<>(decode(json, type), readExpireMillis(json), readRebuildMillis(json));
+	}
+
+	private static long readExpireMillis(JSONObject json) {
+		if (!isRedisData(json)) {
+			return NO_EXPIRE;
+		}
+		LocalDateTime expireTime = json.get(EXPIRE_TIME, LocalDateTime.class);
+		return expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+
+	private static int readRebuildMillis(JSONObject json) {
+		return isRedisData(json) ? json.getInt(REBUILD_MILLIS, 0) : 0;
+	}
+
+	private static <R> R decode(JSONObject json, Class<R> type) {
+		if (isRedisData(json)) {
+			// 逻辑过期缓存，取出其中的数据
+			return json.getJSONObject(DATA).toBean(type);
+		}
+		return json.toBean(type);
+	}
+
+	private static JSONObject parse(byte[] raw) {
+		return JSONUtil.parseObj(new String(raw, StandardCharsets.UTF_8));
+	}
+
+	private static boolean isRedisData(JSONObject json) {
+		return json.size() <= 3 && json.containsKey(EXPIRE_TIME) && json.containsKey(DATA);
+	}
+}
@@ -0,0 +1,102 @@
+package com.hmdp.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图，参考 HdrHistogram 的对数-线性分桶
+ * 说明：每个2的幂区间再等分为16个子桶，相对误差不超过 1/16；记录时只有数组下标计算和原子自增，不分配对象。
+ * 单位为微秒，超过 2^40 微秒的值计入最后一个区间
+ */
+public class LatencyHistogram {
+
+	/**
+	 * 线性区间的位数，小于 2^SUB_BITS 的值每个值一个桶
+	 */
+	private static final int SUB_BITS = 5;
+
+	private static final int HALF = 1 << (SUB_BITS - 1);
+
+	private static final int MAX_BITS = 40;
+
+	private static final long[] PERCENTILES = {500, 900, 990, 999};
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_BITS - SUB_BITS + 3) * HALF);
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * 记录一次耗时
+	 *
+	 * @param micros 耗时，单位微秒
+	 */
+	public void record(long micros) {
+		long value = Math.max(0, Math.min(micros, (1L << MAX_BITS) - 1));
+		counts.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * 统计快照
+	 *
+	 * @return count、mean、p50、p90、p99、p999、max，耗时单位微秒
+	 */
+	public Map<String, Long> snapshot() {
+		long total = 0;
+		long[] copy = new long[counts.length()];
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		Map<String, Long> result = new LinkedHashMap<>();
+		result.put("count", total);
+		long n = count.sum();
+		result.put("mean", n == 0 ? 0 : sum.sum() / n);
+		long maxValue = max.get();
+		int index = 0;
+		long seen = 0;
+		for (long percentile : PERCENTILES) {
+			long target = (total * percentile + 999) / 1000;
+			while (index < copy.length && seen + copy[index] < target) {
+				seen += copy[index++];
+			}
+			result.put(percentile == 999 ? "p999" : "p" + percentile / 10, total == 0 ? 0 : Math.min(upperBound(index), maxValue));
+		}
+		result.put("max", maxValue);
+		return result;
+	}
+
+	private static int indexOf(long value) {
+		int msb = 63 - Long.numberOfLeadingZeros(value);
+		if (msb < SUB_BITS) {
+			return (int) value;
+		}
+		int shift = msb - SUB_BITS + 1;
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	/**
+	 * 桶内的最大值
+	 */
+	private static long upperBound(int index) {
+		if (index < 2 * HALF) {
+			return index;
+		}
+		int shift = index / HALF - 1;
+		long sub = index - (long) shift * HALF;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,501 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 本地店铺地理位置索引，redis 不可用时仍然可以查询附近的店铺
+ * 说明：
+ * 1.按店铺类型划分，每个类型把经纬度按 0.01 度划分网格（与6位 geohash 的精度相近），每个网格用基本类型数组保存店铺id和坐标
+ * 2.半径查询只计算覆盖范围内网格中的店铺；k近邻查询从所在网格向外逐圈扩展，已找到k个且第k个的距离不超过未访问网格的最近距离时结束
+ * 3.坐标保存为弧度并缓存纬度的余弦，使用 GeoUtils.distances 批量计算距离
+ * 4.应用启动时从 tb_shop 全量构建后替换，新增、更新店铺时增量维护；重建期间的写入在替换之前补录到新索引
+ */
+@Slf4j
+@Component
+public class LocalShopGeoIndex implements ApplicationRunner {
+
+	/**
+	 * 网格大小，单位度
+	 */
+	private static final double CELL_DEGREES = 0.01;
+
+	/**
+	 * 每度纬度对应的距离，单位米
+	 */
+	private static final double METERS_PER_DEGREE_LAT = GeoUtils.METERS_PER_DEGREE;
+
+	/**
+	 * 最多向外扩展的圈数
+	 */
+	private static final int MAX_RINGS = 2000;
+
+	/**
+	 * 每个线程复用的距离计算缓冲区
+	 */
+	private static final ThreadLocal<double[][]> SCRATCH = ThreadLocal.withInitial(() -> new double[1][64]);
+
+	private final ShopMapper shopMapper;
+
+	private final boolean enabled;
+
+	private final int pageSize;
+
+	/**
+	 * 分页的最大深度，from + size 超过该值时返回空
+	 */
+	private final int maxDepth;
+
+	private volatile Grid grid = new Grid();
+
+	private volatile boolean ready;
+
+	/**
+	 * 重建期间的写入，重建完成后补录到新索引，不在重建时为 null；读写都需要持有 this 的锁
+	 */
+	private List<Object> pending;
+
+	/**
+	 * 同一时间只有一个重建
+	 */
+	private final Object rebuildMutex = new Object();
+
+	public LocalShopGeoIndex(ShopMapper shopMapper,
+							 @Value("${hmdp.shop-geo.local.enabled:true}") boolean enabled,
+							 @Value("${hmdp.shop-geo.page-size:1000}") int pageSize,
+							 @Value("${hmdp.shop-geo.max-depth:1000}") int maxDepth) {
+		this.shopMapper = shopMapper;
+		this.enabled = enabled;
+		this.pageSize = pageSize;
+		this.maxDepth = maxDepth;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!enabled) {
+			return;
+		}
+		try {
+			rebuild();
+		} catch (Exception e) {
+			log.error("本地店铺地理位置索引构建失败", e);
+		}
+	}
+
+	/**
+	 * 索引是否已构建完成
+	 *
+	 * @return boolean
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * 从 tb_shop 全量构建，补录构建期间的写入后替换当前索引
+	 *
+	 * @return 店铺数量
+	 */
+	public long rebuild() {
+		synchronized (rebuildMutex) {
+			return doRebuild();
+		}
+	}
+
+	private long doRebuild() {
+		long begin = System.currentTimeMillis();
+		synchronized (this) {
+			pending = new ArrayList<>();
+		}
+		Grid rebuilt = new Grid();
+		boolean success = false;
+		try {
+			long lastId = 0;
+			List<Shop> page;
+			while (!(page = shopMapper.selectList(new QueryWrapper<Shop>()
+					.select("id", "type_id", "x", "y")
+					.gt("id", lastId).orderByAsc("id")
+					.last("LIMIT " + pageSize))).isEmpty()) {
+				page.forEach(rebuilt::put);
+				lastId = page.get(page.size() - 1).getId();
+			}
+			success = true;
+		} finally {
+			synchronized (this) {
+				// 补录重建期间的写入后替换，补录和替换时的写入会等待
+				if (success) {
+					for (Object write : pending) {
+						if (write instanceof Shop) {
+							rebuilt.put((Shop) write);
+						} else {
+							rebuilt.remove((Long) write);
+						}
+					}
+					grid = rebuilt;
+				}
+				pending = null;
+			}
+		}
+		ready = true;
+		log.info("本地店铺地理位置索引构建完成，店铺数量：{}，耗时：{}ms", rebuilt.locations.size(), System.currentTimeMillis() - begin);
+		return rebuilt.locations.size();
+	}
+
+	/**
+	 * 新增或更新店铺坐标，类型或坐标变化时移动到新的网格
+	 *
+	 * @param shop 店铺，需要 id、typeId、x、y
+	 */
+	public void put(Shop shop) {
+		if (!enabled) {
+			return;
+		}
+		synchronized (this) {
+			if (pending != null) {
+				pending.add(shop);
+			}
+			grid.put(shop);
+		}
+	}
+
+	/**
+	 * 删除店铺
+	 *
+	 * @param id 店铺id
+	 */
+	public void remove(Long id) {
+		if (!enabled) {
+			return;
+		}
+		synchronized (this) {
+			if (pending != null) {
+				pending.add(id);
+			}
+			grid.remove(id);
+		}
+	}
+
+	/**
+	 * 半径查询，按距离由近到远排列
+	 *
+	 * @param typeId 店铺类型
+	 * @param x      经度
+	 * @param y      纬度
+	 * @param radius 半径，单位米
+	 * @param from   跳过的数量
+	 * @param size   数量
+	 * @return key：店铺id，value：距离（米），按距离升序；from + size 超过最大深度时为空
+	 * @throws IllegalArgumentException from 小于0或 size 不大于0
+	 */
+	public Map<Long, Double> search(Long typeId, double x, double y, double radius, int from, int size) {
+		if (from < 0 || size <= 0) {
+			throw new IllegalArgumentException("分页参数错误：from=" + from + "，size=" + size);
+		}
+		if ((long) from + size > maxDepth) {
+			return new LinkedHashMap<>();
+		}
+		TopK top = new TopK(from + size);
+		grid.search(typeId, x, y, radius, top);
+		return top.toMap(from);
+	}
+
+	/**
+	 * k近邻查询，按距离由近到远排列
+	 *
+	 * @param typeId 店铺类型
+	 * @param x      经度
+	 * @param y      纬度
+	 * @param k      数量，不超过最大深度
+	 * @return key：店铺id，value：距离（米），按距离升序
+	 * @throws IllegalArgumentException k 不在 [1, 最大深度] 范围内
+	 */
+	public Map<Long, Double> nearest(Long typeId, double x, double y, int k) {
+		if (k <= 0 || k > maxDepth) {
+			throw new IllegalArgumentException("k 超出范围：" + k);
+		}
+		TopK top = new TopK(k);
+		grid.search(typeId, x, y, Double.MAX_VALUE, top);
+		return top.toMap(0);
+	}
+
+	private static long cellKey(long latIndex, long lngIndex) {
+		return (latIndex << 32) | (lngIndex & 0xFFFFFFFFL);
+	}
+
+	private static long index(double degrees) {
+		return (long) Math.floor(degrees / CELL_DEGREES);
+	}
+
+	private static double[] scratch(int n) {
+		double[][] holder = SCRATCH.get();
+		if (holder[0].length < n) {
+			holder[0] = new double[Math.max(n, holder[0].length << 1)];
+		}
+		return holder[0];
+	}
+
+	/**
+	 * 所有类型的网格
+	 */
+	private static class Grid {
+
+		private final Map<Long, Map<Long, Cell>> types = new HashMap<>();
+
+		/**
+		 * key：店铺id，value：所在类型和网格
+		 */
+		private final Map<Long, long[]> locations = new HashMap<>();
+
+		/**
+		 * key：店铺类型，value：店铺数量
+		 */
+		private final Map<Long, Integer> sizes = new HashMap<>();
+
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		void put(Shop shop) {
+			if (shop.getId() == null || shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+				return;
+			}
+			long key = cellKey(index(shop.getY()), index(shop.getX()));
+			lock.writeLock().lock();
+			try {
+				removeLocked(shop.getId());
+				types.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+						.computeIfAbsent(key, k -> new Cell())
+						.add(shop.getId(), shop.getX(), shop.getY());
+				locations.put(shop.getId(), new long[]{shop.getTypeId(), key});
+				sizes.merge(shop.getTypeId(), 1, Integer::sum);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		void remove(Long id) {
+			lock.writeLock().lock();
+			try {
+				removeLocked(id);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		private void removeLocked(Long id) {
+			long[] location = locations.remove(id);
+			if (location == null) {
+				return;
+			}
+			sizes.merge(location[0], -1, Integer::sum);
+			Map<Long, Cell> cells = types.get(location[0]);
+			Cell cell = cells.get(location[1]);
+			cell.remove(id);
+			if (cell.size == 0) {
+				cells.remove(location[1]);
+			}
+		}
+
+		/**
+		 * 从查询点所在网格向外逐圈访问，直到覆盖查询半径，或者已找到足够的店铺且未访问的网格不可能更近
+		 */
+		void search(Long typeId, double x, double y, double radius, TopK top) {
+			double lng = Math.toRadians(x);
+			double lat = Math.toRadians(y);
+			double cosLat = Math.cos(lat);
+			long ci = index(y);
+			long cj = index(x);
+			// 覆盖查询半径需要的圈数，经线方向的网格宽度随纬度变小
+			double latDelta = radius / METERS_PER_DEGREE_LAT;
+			double lngDelta = latDelta / Math.max(Math.cos(Math.toRadians(Math.min(89, Math.abs(y) + latDelta))), 1e-6);
+			int maxRing = (int) Math.min(MAX_RINGS, Math.ceil(Math.max(latDelta, lngDelta) / CELL_DEGREES) + 1);
+			lock.readLock().lock();
+			try {
+				Map<Long, Cell> cells = types.get(typeId);
+				if (cells == null) {
+					return;
+				}
+				int total = sizes.getOrDefault(typeId, 0);
+				int visited = 0;
+				for (int ring = 0; ring <= maxRing && visited < total; ring++) {
+					if (ring == 0) {
+						visited += collect(cells, ci, cj, lng, lat, cosLat, radius, top);
+					}
+					for (long k = -ring; k <= ring && ring > 0; k++) {
+						// 上下两行
+						visited += collect(cells, ci - ring, cj + k, lng, lat, cosLat, radius, top);
+						visited += collect(cells, ci + ring, cj + k, lng, lat, cosLat, radius, top);
+						// 左右两列，不含四个角
+						if (k != -ring && k != ring) {
+							visited += collect(cells, ci + k, cj - ring, lng, lat, cosLat, radius, top);
+							visited += collect(cells, ci + k, cj + ring, lng, lat, cosLat, radius, top);
+						}
+					}
+					// 未访问的网格距离查询点至少 ring 个网格宽度
+					double bound = ring * CELL_DEGREES * METERS_PER_DEGREE_LAT
+							* Math.cos(Math.toRadians(Math.min(89, Math.abs(y) + (ring + 1) * CELL_DEGREES)));
+					if (bound > radius || top.isFull() && top.maxDistance() <= bound) {
+						break;
+					}
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private static int collect(Map<Long, Cell> cells, long i, long j, double lng, double lat, double cosLat,
+								   double radius, TopK top) {
+			Cell cell = cells.get(cellKey(i, j));
+			if (cell == null) {
+				return 0;
+			}
+			cell.collect(lng, lat, cosLat, radius, top);
+			return cell.size;
+		}
+	}
+
+	/**
+	 * 一个网格中的店铺，坐标保存为弧度
+	 */
+	private static class Cell {
+
+		private long[] ids = new long[4];
+		private double[] lngs = new double[4];
+		private double[] lats = new double[4];
+		private double[] cosLats = new double[4];
+		private int size;
+
+		void add(long id, double x, double y) {
+			if (size == ids.length) {
+				int capacity = size << 1;
+				ids = Arrays.copyOf(ids, capacity);
+				lngs = Arrays.copyOf(lngs, capacity);
+				lats = Arrays.copyOf(lats, capacity);
+				cosLats = Arrays.copyOf(cosLats, capacity);
+			}
+			double lat = Math.toRadians(y);
+			ids[size] = id;
+			lngs[size] = Math.toRadians(x);
+			lats[size] = lat;
+			cosLats[size] = Math.cos(lat);
+			size++;
+		}
+
+		void remove(long id) {
+			for (int i = 0; i < size; i++) {
+				if (ids[i] == id) {
+					// 用最后一个元素填补空位
+					size--;
+					ids[i] = ids[size];
+					lngs[i] = lngs[size];
+					lats[i] = lats[size];
+					cosLats[i] = cosLats[size];
+					return;
+				}
+			}
+		}
+
+		void collect(double lng, double lat, double cosLat, double radius, TopK top) {
+			double[] distances = scratch(size);
+			GeoUtils.distances(lng, lat, cosLat, lngs, lats, cosLats, size, distances);
+			for (int i = 0; i < size; i++) {
+				if (distances[i] <= radius) {
+					top.offer(ids[i], distances[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 保留距离最近的k个店铺，基本类型数组实现的大顶堆
+	 */
+	private static class TopK {
+
+		private final long[] ids;
+		private final double[] distances;
+		private int size;
+
+		TopK(int k) {
+			this.ids = new long[k];
+			this.distances = new double[k];
+		}
+
+		boolean isFull() {
+			return size == ids.length;
+		}
+
+		double maxDistance() {
+			return distances[0];
+		}
+
+		void offer(long id, double distance) {
+			if (ids.length == 0) {
+				return;
+			}
+			if (size < ids.length) {
+				// 上浮
+				int i = size++;
+				while (i > 0) {
+					int parent = (i - 1) >>> 1;
+					if (distances[parent] >= distance) {
+						break;
+					}
+					ids[i] = ids[parent];
+					distances[i] = distances[parent];
+					i = parent;
+				}
+				ids[i] = id;
+				distances[i] = distance;
+			} else if (distance < distances[0]) {
+				// 替换堆顶后下沉
+				int i = 0;
+				while (true) {
+					int child = (i << 1) + 1;
+					if (child >= size) {
+						break;
+					}
+					if (child + 1 < size && distances[child + 1] > distances[child]) {
+						child++;
+					}
+					if (distances[child] <= distance) {
+						break;
+					}
+					ids[i] = ids[child];
+					distances[i] = distances[child];
+					i = child;
+				}
+				ids[i] = id;
+				distances[i] = distance;
+			}
+		}
+
+		/**
+		 * 按距离升序输出，跳过前 from 个
+		 */
+		Map<Long, Double> toMap(int from) {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+			Map<Long, Double> result = new LinkedHashMap<>(Math.max(16, (size - from) * 2));
+			for (int i = from; i < size; i++) {
+				result.put(ids[order[i]], distances[order[i]]);
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.zip.CRC32;
+
+/**
+ * 游标分页的游标编解码：最后一条记录的排序字段和id编码为 url 安全的 base64，前端原样回传，不需要理解其内容
+ * 说明：按 (排序字段, id) 继续查询，利用索引定位到上一页的最后一条，不需要 COUNT，也不需要跳过前面的 offset 行
+ * 游标末尾附加4字节校验和，解码时校验格式、校验和，并拒绝负数，调用方只会拿到自己编码过的值
+ */
+public final class PageCursor {
+
+	private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+	private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+	private PageCursor() {
+	}
+
+	/**
+	 * 编码游标
+	 *
+	 * @param values 最后一条记录的排序字段，最后一个一般为id
+	 * @return 游标
+	 */
+	public static String encode(long... values) {
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES + Integer.BYTES);
+		for (long value : values) {
+			buffer.putLong(value);
+		}
+		buffer.putInt(checksum(buffer.array(), values.length * Long.BYTES));
+		return ENCODER.encodeToString(buffer.array());
+	}
+
+	/**
+	 * 解码游标
+	 *
+	 * @param cursor 游标
+	 * @param length 排序字段的数量
+	 * @return 排序字段，都不小于0
+	 * @throws IllegalArgumentException 游标格式错误、校验和不一致或包含负数
+	 */
+	public static long[] decode(String cursor, int length) {
+		// 非法的 base64 字符同样抛出 IllegalArgumentException
+		byte[] bytes = DECODER.decode(cursor);
+		if (bytes.length != length * Long.BYTES + Integer.BYTES) {
+			throw new IllegalArgumentException("游标格式错误：" + cursor);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		long[] values = new long[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = buffer.getLong();
+			if (values[i] < 0) {
+				throw new IllegalArgumentException("游标格式错误：" + cursor);
+			}
+		}
+		if (buffer.getInt() != checksum(bytes, length * Long.BYTES)) {
+			throw new IllegalArgumentException("游标校验失败：" + cursor);
+		}
+		return values;
+	}
+
+	/**
+	 * 游标包含的排序字段数量，用于区分排序方式不同的游标；不校验校验和，解码时仍需调用 decode
+	 *
+	 * @param cursor 游标
+	 * @return 排序字段的数量，格式错误时返回-1
+	 */
+	public static int lengthOf(String cursor) {
+		byte[] bytes;
+		try {
+			bytes = DECODER.decode(cursor);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+		int length = bytes.length - Integer.BYTES;
+		return length > 0 && length % Long.BYTES == 0 ? length / Long.BYTES : -1;
+	}
+
+	private static int checksum(byte[] bytes, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * 是否为游标分页模式：传入 cursor 参数（第一页为空字符串）
+	 *
+	 * @param cursor 游标参数
+	 * @return boolean
+	 */
+	public static boolean isCursorMode(String cursor) {
+		return cursor != null;
+	}
+
+	/**
+	 * 是否为第一页
+	 *
+	 * @param cursor 游标参数
+	 * @return boolean
+	 */
+	public static boolean isFirstPage(String cursor) {
+		return cursor == null || cursor.isEmpty();
+	}
+}
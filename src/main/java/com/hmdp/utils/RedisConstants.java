@@ -10,11 +10,34 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final Long CACHE_SHOP_LOCAL_TTL = 5L;
+    public static final Integer CACHE_SHOP_LOCAL_SIZE = 1000;
+    public static final String CACHE_SHOP_HASH_KEY = "cache:shop:hash:";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;
+
+    public static final String BLOOM_FILTER_KEY = "bloom:";
+    public static final String BLOOM_FILTER_CHANNEL = "bloom:added";
+
+    public static final String SHOP_TYPE_VERSION_KEY = "shop-type:version";
+    public static final String SHOP_TYPE_CHANNEL = "shop-type:changed";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_KEY = "lock:";
+    public static final Long LOCK_TTL = 10L;
+    public static final String LOCK_RELEASE_CHANNEL = "lock:release";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ORDER_STREAM_KEY = "stream:orders";
+    public static final String SECKILL_ORDER_GROUP = "order-writer";
+    public static final String SECKILL_ORDER_DEAD_LETTER_KEY = "stream:orders:rejected";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_RESTOCK_CHANNEL = "seckill:restocked";
+    public static final String ID_KEY = "icr:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -8,4 +8,5 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    private Integer rebuildMillis;
 }
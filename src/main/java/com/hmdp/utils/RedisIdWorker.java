@@ -0,0 +1,324 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static com.hmdp.utils.RedisConstants.ID_KEY;
+
+/**
+ * 全局唯一id生成器
+ * 说明：
+ * 1.id 为 64 位，符号位 0，31 位秒级时间戳（相对 2022-01-01），32 位序列号；序列号按业务和日期唯一，时间戳决定日期，
+ * 因此 (时间戳, 序列号) 在集群内唯一，id 按时间递增
+ * 2.序列号按号段从 redis 租用：INCRBY key step 得到 [end - step + 1, end]，号段内由 AtomicLong 无锁分配；
+ * 当前号段用掉 80% 时后台预取下一个号段，号段用完时切换，避免请求线程等待 redis；号段在预取完成之前用完时号段长度翻倍
+ * 3.时钟回拨时继续使用已经用过的最大时间戳，不会生成重复或倒序的id；回拨超过阈值时打印告警
+ */
+@Slf4j
+@Component
+public class RedisIdWorker {
+
+	/**
+	 * 开始时间戳：2022-01-01 00:00:00 UTC
+	 */
+	private static final long BEGIN_TIMESTAMP = 1640995200L;
+
+	/**
+	 * 序列号的位数
+	 */
+	private static final int COUNT_BITS = 32;
+
+	private static final long SECONDS_PER_DAY = 86400L;
+
+	/**
+	 * 当前号段用掉该比例后预取下一个号段
+	 */
+	private static final double PREFETCH_RATIO = 0.8;
+
+	/**
+	 * 号段用完时等待预取的最长时间
+	 */
+	private static final long PREFETCH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+	/**
+	 * 号段使用时间超过该值时减小号段长度
+	 */
+	private static final long SHRINK_AFTER_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+	private final StringRedisTemplate stringRedisTemplate;
+
+	/**
+	 * 每次租用的号段长度，根据消耗速度在 [step, maxStep] 之间调整
+	 */
+	private final int step;
+
+	private final int maxStep;
+
+	/**
+	 * 时钟回拨超过该值时告警，单位毫秒
+	 */
+	private final long maxBackwardMillis;
+
+	private final LongSupplier clock;
+
+	/**
+	 * 已经用过的最大时间（秒），时钟回拨时继续使用
+	 */
+	private final AtomicLong lastSecond = new AtomicLong();
+
+	private final AtomicBoolean backward = new AtomicBoolean();
+
+	/**
+	 * key：业务前缀
+	 */
+	private final Map<String, Sequence> sequences = new ConcurrentHashMap<>();
+
+	private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "id-segment-prefetch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Autowired
+	public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+						 @Value("${hmdp.id.step:1000}") int step,
+						 @Value("${hmdp.id.max-step:100000}") int maxStep,
+						 @Value("${hmdp.id.max-backward-millis:5000}") long maxBackwardMillis) {
+		this(stringRedisTemplate, step, maxStep, maxBackwardMillis, System::currentTimeMillis);
+	}
+
+	RedisIdWorker(StringRedisTemplate stringRedisTemplate, int step, int maxStep, long maxBackwardMillis,
+				  LongSupplier clock) {
+		this.stringRedisTemplate = stringRedisTemplate;
+		this.step = step;
+		this.maxStep = Math.max(step, maxStep);
+		this.maxBackwardMillis = maxBackwardMillis;
+		this.clock = clock;
+	}
+
+	/**
+	 * 生成id
+	 *
+	 * @param keyPrefix 业务前缀，例如 order
+	 * @return id
+	 */
+	public long nextId(String keyPrefix) {
+		Sequence sequence = sequences.get(keyPrefix);
+		if (sequence == null) {
+			sequence = sequences.computeIfAbsent(keyPrefix, Sequence::new);
+		}
+		while (true) {
+			// 1.时间戳，不小于已经用过的最大时间
+			long second = currentSecond();
+			// 2.时间戳所在日期的序列号；其他线程已经切换到下一天时重新读取时间
+			long count = sequence.next(second / SECONDS_PER_DAY);
+			if (count > 0) {
+				// 3.拼接
+				return (second - BEGIN_TIMESTAMP) << COUNT_BITS | count;
+			}
+		}
+	}
+
+	private long currentSecond() {
+		long millis = clock.getAsLong();
+		long now = millis / 1000;
+		while (true) {
+			long last = lastSecond.get();
+			if (now >= last) {
+				if (now == last || lastSecond.compareAndSet(last, now)) {
+					backward.set(false);
+					return now;
+				}
+				continue;
+			}
+			// 时钟回拨
+			long backwardMillis = (last + 1) * 1000 - millis;
+			if (backwardMillis > maxBackwardMillis && backward.compareAndSet(false, true)) {
+				log.warn("检测到时钟回拨{}ms，继续使用已用过的最大时间戳生成id", backwardMillis);
+			}
+			return last;
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		prefetchExecutor.shutdownNow();
+	}
+
+	/**
+	 * 从 redis 租用的一段序列号 [cursor, end]
+	 */
+	private static final class Segment {
+
+		static final Segment EMPTY = new Segment(-1, 1, 0, 0);
+
+		private final long day;
+		private final AtomicLong cursor;
+		private final long end;
+
+		/**
+		 * 分配到该序列号时预取下一个号段
+		 */
+		private final long prefetchAt;
+
+		private final long createdNanos = System.nanoTime();
+
+		Segment(long day, long start, long end, long prefetchAt) {
+			this.day = day;
+			this.cursor = new AtomicLong(start);
+			this.end = end;
+			this.prefetchAt = prefetchAt;
+		}
+	}
+
+	/**
+	 * 一个业务前缀的序列号
+	 */
+	private final class Sequence {
+
+		private final String keyPrefix;
+
+		private volatile Segment current = Segment.EMPTY;
+
+		/**
+		 * 预取的下一个号段
+		 */
+		private Segment next;
+
+		private boolean prefetching;
+
+		/**
+		 * 当前的号段长度，号段在预取完成之前用完时翻倍，使用时间较长时减半，范围 [step, maxStep]
+		 */
+		private int leaseSize = step;
+
+		Sequence(String keyPrefix) {
+			this.keyPrefix = keyPrefix;
+		}
+
+		/**
+		 * 分配一个序列号
+		 *
+		 * @param day 时间戳所在的日期
+		 * @return 序列号，当前号段已经是之后的日期时返回 -1
+		 */
+		long next(long day) {
+			while (true) {
+				Segment segment = current;
+				if (segment.day == day) {
+					long count = segment.cursor.getAndIncrement();
+					if (count <= segment.end) {
+						if (count == segment.prefetchAt) {
+							prefetch(segment);
+						}
+						return count;
+					}
+				} else if (segment.day > day) {
+					return -1;
+				}
+				// 号段用完或者日期变化，切换到预取的号段或者同步租用
+				synchronized (this) {
+					if (current == segment) {
+						switchSegment(segment, day);
+					}
+				}
+			}
+		}
+
+		private void switchSegment(Segment segment, long day) {
+			if (segment.day == day) {
+				// 等待正在进行的预取，不重复租用
+				boolean exhausted = next == null;
+				awaitPrefetch();
+				if (current != segment) {
+					// 等待期间其他线程已经切换
+					return;
+				}
+				// 号段在预取完成之前用完，加大之后的号段长度
+				if (exhausted && leaseSize < maxStep) {
+					leaseSize = (int) Math.min((long) leaseSize << 1, maxStep);
+				}
+			}
+			Segment prefetched = next;
+			next = null;
+			current = prefetched != null && prefetched.day == day ? prefetched : lease(day, leaseSize);
+		}
+
+		private void awaitPrefetch() {
+			long deadline = System.nanoTime() + PREFETCH_TIMEOUT_NANOS;
+			long remaining;
+			while (prefetching && next == null && (remaining = deadline - System.nanoTime()) > 0) {
+				try {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		private void prefetch(Segment segment) {
+			int size;
+			synchronized (this) {
+				if (prefetching || current != segment) {
+					return;
+				}
+				prefetching = true;
+				// 号段使用时间较长时减小号段长度，节点重启时作废的序列号更少
+				if (System.nanoTime() - segment.createdNanos > SHRINK_AFTER_NANOS && leaseSize > step) {
+					leaseSize = Math.max(leaseSize >> 1, step);
+				}
+				size = leaseSize;
+			}
+			try {
+				prefetchExecutor.execute(() -> {
+					Segment leased = null;
+					try {
+						leased = lease(segment.day, size);
+					} catch (Exception e) {
+						log.warn("预取id号段失败：{}，号段用完时同步租用", keyPrefix, e);
+					} finally {
+						synchronized (this) {
+							if (leased != null && current == segment) {
+								next = leased;
+							}
+							prefetching = false;
+							notifyAll();
+						}
+					}
+				});
+			} catch (Exception e) {
+				synchronized (this) {
+					prefetching = false;
+				}
+			}
+		}
+
+		private Segment lease(long day, int size) {
+			String key = ID_KEY + keyPrefix + ":" + LocalDate.ofEpochDay(day).format(DATE_FORMATTER);
+			Long end = stringRedisTemplate.opsForValue().increment(key, size);
+			if (end == null) {
+				throw new IllegalStateException("租用id号段失败：" + key);
+			}
+			long start = end - size + 1;
+			return new Segment(day, start, end, start + (long) (size * PREFETCH_RATIO));
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀库存预扣
+ * 说明：
+ * 1.秒杀券的库存和开始、结束时间保存在 hash：seckill:stock:{voucherId}，已下单的用户保存在 set：seckill:order:{voucherId}
+ * 2.一次 lua 脚本调用完成时间窗口、库存、一人一单的判断和库存扣减，原子执行，不会超卖；
+ * 预扣成功的订单在同一个脚本中发布到订单 stream：stream:orders，预扣和发布不会只完成一个
+ * 3.新增秒杀券时写入；redis 中没有时从数据库加载，只写入不存在的字段，库存字段最后写入，作为加载完成的标志；
+ * 补充库存时只增加已加载的库存
+ */
+@Component
+public class SeckillStockReserver {
+
+	public static final int SUCCESS = 0;
+	public static final int NOT_STARTED = 1;
+	public static final int ENDED = 2;
+	public static final int SOLD_OUT = 3;
+	public static final int DUPLICATE = 4;
+	public static final int NOT_LOADED = 5;
+
+	private static final String STOCK_FIELD = "stock";
+	private static final String BEGIN_FIELD = "begin";
+	private static final String END_FIELD = "end";
+
+	private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+
+	private static final DefaultRedisScript<Long> HINCR_SCRIPT;
+
+	static {
+		SECKILL_SCRIPT = new DefaultRedisScript<>();
+		SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+		SECKILL_SCRIPT.setResultType(Long.class);
+		HINCR_SCRIPT = new DefaultRedisScript<>();
+		HINCR_SCRIPT.setLocation(new ClassPathResource("hincr.lua"));
+		HINCR_SCRIPT.setResultType(Long.class);
+	}
+
+	private final StringRedisTemplate stringRedisTemplate;
+
+	/**
+	 * 订单 stream 的 key
+	 */
+	private final String streamKey;
+
+	@Autowired
+	public SeckillStockReserver(StringRedisTemplate stringRedisTemplate) {
+		this(stringRedisTemplate, SECKILL_ORDER_STREAM_KEY);
+	}
+
+	SeckillStockReserver(StringRedisTemplate stringRedisTemplate, String streamKey) {
+		this.stringRedisTemplate = stringRedisTemplate;
+		this.streamKey = streamKey;
+	}
+
+	/**
+	 * 判断下单资格并预扣库存，成功时把订单发布到订单 stream
+	 *
+	 * @param voucherId 秒杀券id
+	 * @param userId    用户id
+	 * @param orderId   订单id
+	 * @return SUCCESS、NOT_STARTED、ENDED、SOLD_OUT、DUPLICATE、NOT_LOADED
+	 */
+	public int reserve(Long voucherId, Long userId, long orderId) {
+		Long result = stringRedisTemplate.execute(SECKILL_SCRIPT,
+				Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, streamKey),
+				userId.toString(), String.valueOf(System.currentTimeMillis()), voucherId.toString(),
+				String.valueOf(orderId));
+		return result == null ? NOT_LOADED : result.intValue();
+	}
+
+	/**
+	 * 写入秒杀券的库存和时间窗口，覆盖已有的数据，用于新增秒杀券
+	 *
+	 * @param voucher 秒杀券
+	 */
+	public void save(SeckillVoucher voucher) {
+		Map<String, String> fields = new HashMap<>(4);
+		fields.put(BEGIN_FIELD, String.valueOf(toMillis(voucher.getBeginTime())));
+		fields.put(END_FIELD, String.valueOf(toMillis(voucher.getEndTime())));
+		fields.put(STOCK_FIELD, String.valueOf(voucher.getStock()));
+		stringRedisTemplate.opsForHash().putAll(SECKILL_STOCK_KEY + voucher.getVoucherId(), fields);
+	}
+
+	/**
+	 * 从数据库加载秒杀券，只写入不存在的字段，不会覆盖已经预扣的库存
+	 *
+	 * @param voucher 秒杀券
+	 */
+	public void load(SeckillVoucher voucher) {
+		String key = SECKILL_STOCK_KEY + voucher.getVoucherId();
+		stringRedisTemplate.opsForHash().putIfAbsent(key, BEGIN_FIELD, String.valueOf(toMillis(voucher.getBeginTime())));
+		stringRedisTemplate.opsForHash().putIfAbsent(key, END_FIELD, String.valueOf(toMillis(voucher.getEndTime())));
+		stringRedisTemplate.opsForHash().putIfAbsent(key, STOCK_FIELD, String.valueOf(voucher.getStock()));
+	}
+
+	/**
+	 * 补充库存：redis 中已经加载时增加库存，没有加载时不处理，下单时从数据库加载
+	 *
+	 * @param voucherId 秒杀券id
+	 * @param count     增加的库存
+	 */
+	public void restock(Long voucherId, int count) {
+		stringRedisTemplate.execute(HINCR_SCRIPT, Collections.singletonList(SECKILL_STOCK_KEY + voucherId),
+				STOCK_FIELD, String.valueOf(count));
+	}
+
+	private static long toMillis(LocalDateTime time) {
+		return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
+}
@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+/**
+ * 店铺的二进制序列化器
+ * 说明：字段顺序即存储格式，新增字段只能追加在末尾，并同步修改 BinaryCacheCodec 的版本
+ */
+@Component
+public class ShopBinarySerializer implements BinarySerializer<Shop> {
+
+	@Override
+	public Class<Shop> type() {
+		return Shop.class;
+	}
+
+	@Override
+	public void write(Shop shop, BinaryCacheCodec.Output out) {
+		out.writeLong(shop.getId());
+		out.writeString(shop.getName());
+		out.writeLong(shop.getTypeId());
+		out.writeString(shop.getImages());
+		out.writeString(shop.getArea());
+		out.writeString(shop.getAddress());
+		out.writeDouble(shop.getX());
+		out.writeDouble(shop.getY());
+		out.writeLong(shop.getAvgPrice());
+		out.writeInt(shop.getSold());
+		out.writeInt(shop.getComments());
+		out.writeInt(shop.getScore());
+		out.writeString(shop.getOpenHours());
+		out.writeDateTime(shop.getCreateTime());
+		out.writeDateTime(shop.getUpdateTime());
+	}
+
+	@Override
+	public Shop read(BinaryCacheCodec.Input in) {
+		Shop shop = new Shop();
+		shop.setId(in.readLong());
+		shop.setName(in.readString());
+		shop.setTypeId(in.readLong());
+		shop.setImages(in.readString());
+		shop.setArea(in.readString());
+		shop.setAddress(in.readString());
+		shop.setX(in.readDouble());
+		shop.setY(in.readDouble());
+		shop.setAvgPrice(in.readLong());
+		shop.setSold(in.readInt());
+		shop.setComments(in.readInt());
+		shop.setScore(in.readInt());
+		shop.setOpenHours(in.readString());
+		shop.setCreateTime(in.readDateTime());
+		shop.setUpdateTime(in.readDateTime());
+		return shop;
+	}
+}
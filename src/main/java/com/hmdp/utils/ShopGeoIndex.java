@@ -0,0 +1,178 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 店铺地理位置索引，每个店铺类型一个 redis GEO key：shop:geo:{typeId}，member 为店铺id
+ * 说明：应用启动时分页读取 tb_shop，使用管道批量 GEOADD；新增、更新店铺时增量维护
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex implements ApplicationRunner {
+
+	private final StringRedisTemplate stringRedisTemplate;
+
+	private final ShopMapper shopMapper;
+
+	/**
+	 * 是否在应用启动时全量加载
+	 */
+	private final boolean loadOnStartup;
+
+	private final int pageSize;
+
+	/**
+	 * 按距离分页的最大深度，from + size 超过该值时返回空
+	 */
+	private final int maxDepth;
+
+	public ShopGeoIndex(StringRedisTemplate stringRedisTemplate, ShopMapper shopMapper,
+						@Value("${hmdp.shop-geo.load-on-startup:true}") boolean loadOnStartup,
+						@Value("${hmdp.shop-geo.page-size:1000}") int pageSize,
+						@Value("${hmdp.shop-geo.max-depth:1000}") int maxDepth) {
+		this.stringRedisTemplate = stringRedisTemplate;
+		this.shopMapper = shopMapper;
+		this.loadOnStartup = loadOnStartup;
+		this.pageSize = pageSize;
+		this.maxDepth = maxDepth;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!loadOnStartup) {
+			return;
+		}
+		try {
+			loadAll();
+		} catch (Exception e) {
+			// 加载失败不影响启动，可以通过管理端手动加载
+			log.error("店铺地理位置索引加载失败", e);
+		}
+	}
+
+	/**
+	 * 全量加载：按id分页读取店铺坐标，每页一个管道批量 GEOADD
+	 *
+	 * @return 加载的店铺数量
+	 */
+	public long loadAll() {
+		long begin = System.currentTimeMillis();
+		long loaded = 0;
+		long lastId = 0;
+		List<Shop> page;
+		while (!(page = shopMapper.selectList(new QueryWrapper<Shop>()
+				.select("id", "type_id", "x", "y")
+				.gt("id", lastId).orderByAsc("id")
+				.last("LIMIT " + pageSize))).isEmpty()) {
+			List<Shop> shops = page;
+			stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+				for (Shop shop : shops) {
+					if (hasLocation(shop)) {
+						connection.geoAdd(rawKey(shop.getTypeId()), new Point(shop.getX(), shop.getY()), rawMember(shop.getId()));
+					}
+				}
+				return null;
+			});
+			loaded += page.size();
+			lastId = page.get(page.size() - 1).getId();
+		}
+		log.info("店铺地理位置索引加载完成，店铺数量：{}，耗时：{}ms", loaded, System.currentTimeMillis() - begin);
+		return loaded;
+	}
+
+	/**
+	 * 新增或更新店铺坐标
+	 *
+	 * @param shop 店铺，需要 id、typeId、x、y
+	 */
+	public void add(Shop shop) {
+		if (hasLocation(shop)) {
+			stringRedisTemplate.opsForGeo().add(SHOP_GEO_KEY + shop.getTypeId(),
+					new Point(shop.getX(), shop.getY()), shop.getId().toString());
+		}
+	}
+
+	/**
+	 * 店铺更新后维护索引：类型变化时从旧类型中移除
+	 *
+	 * @param before 更新前的店铺
+	 * @param after  更新后的店铺
+	 */
+	public void update(Shop before, Shop after) {
+		if (before != null && before.getTypeId() != null && !Objects.equals(before.getTypeId(), after.getTypeId())) {
+			stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + before.getTypeId(), before.getId().toString());
+		}
+		add(after);
+	}
+
+	/**
+	 * 按距离由近到远查询指定类型的店铺
+	 *
+	 * @param typeId 店铺类型
+	 * @param x      经度
+	 * @param y      纬度
+	 * @param radius 查询半径，单位米
+	 * @param from   跳过的数量
+	 * @param size   数量
+	 * @return key：店铺id，value：距离（米），按距离升序；from + size 超过最大深度时为空
+	 * @throws IllegalArgumentException from 小于0或 size 不大于0
+	 */
+	public Map<Long, Double> search(Long typeId, double x, double y, double radius, int from, int size) {
+		if (from < 0 || size <= 0) {
+			throw new IllegalArgumentException("分页参数错误：from=" + from + "，size=" + size);
+		}
+		if ((long) from + size > maxDepth) {
+			return new LinkedHashMap<>();
+		}
+		// spring data redis 2.3 不支持 GEOSEARCH，使用 GEORADIUS，返回前 from + size 条后跳过前 from 条
+		GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+				SHOP_GEO_KEY + typeId,
+				new Circle(new Point(x, y), new Distance(radius, RedisGeoCommands.DistanceUnit.METERS)),
+				RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(from + size));
+		Map<Long, Double> distances = new LinkedHashMap<>(size * 2);
+		if (results == null) {
+			return distances;
+		}
+		List<GeoResult<RedisGeoCommands.GeoLocation<String>>> content = results.getContent();
+		for (int i = from; i < content.size(); i++) {
+			GeoResult<RedisGeoCommands.GeoLocation<String>> result = content.get(i);
+			distances.put(Long.valueOf(result.getContent().getName()), result.getDistance().getValue());
+		}
+		return distances;
+	}
+
+	private static boolean hasLocation(Shop shop) {
+		return shop.getId() != null && shop.getTypeId() != null && shop.getX() != null && shop.getY() != null;
+	}
+
+	private static byte[] rawKey(Long typeId) {
+		return (SHOP_GEO_KEY + typeId).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] rawMember(Long id) {
+		return id.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,566 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.CursorResult;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 店铺名称搜索的内存倒排索引，代替 LIKE '%name%' 全表扫描
+ * 说明：
+ * 1.店铺名称、商圈、地址分别切分为单字和相邻两字（2-gram），每个 gram 的倒排表是按文档序号递增的 int 数组
+ * 2.查询词长度为1时使用单字倒排表，否则对查询词的所有 2-gram 倒排表求交集（从最短的开始），再用原文确认连续匹配
+ * 3.排序：名称完全相同 > 名称前缀 > 名称包含 > 商圈包含 > 地址包含，同一档内按评分、销量降序，最后按店铺id降序；
+ * 游标为最后一条的排序值和店铺id，翻页时只保留排在游标之后的前 size 条
+ * 4.店铺新增、更新时增量维护：旧文档标记删除，新文档追加到倒排表末尾，倒排表保持有序；
+ * 定时全量重建，清除已删除的文档并刷新评分、销量，重建期间的写入在替换前补录
+ * 5.全量构建时按评分、销量降序分配文档序号，倒排表的前段即按静态排序值降序：已找到 size 条且第 size 条的排序值
+ * 大于后续文档可能达到的最大排序值（最高档位 + 静态排序值）时提前结束；前段最多检查 maxCandidates 个文档，超过后
+ * 只检查重建后追加的文档，结果为近似排序。后段（重建后追加的文档）总是全部检查
+ */
+@Slf4j
+@Component
+public class ShopSearchIndex implements ApplicationRunner {
+
+	/**
+	 * 排序值中匹配档位的偏移，低位为评分和销量
+	 */
+	private static final int RELEVANCE_SHIFT = 40;
+
+	private static final long NAME_EXACT = 5;
+	private static final long NAME_PREFIX = 4;
+	private static final long NAME_CONTAINS = 3;
+	private static final long AREA_CONTAINS = 2;
+	private static final long ADDRESS_CONTAINS = 1;
+
+	/**
+	 * 销量在排序值中占用的位数
+	 */
+	private static final int SOLD_BITS = 24;
+
+	private final ShopMapper shopMapper;
+
+	private final boolean enabled;
+
+	private final int pageSize;
+
+	/**
+	 * 每次查询在倒排表前段最多检查的文档数量
+	 */
+	private final int maxCandidates;
+
+	private volatile Index index = new Index();
+
+	private volatile boolean ready;
+
+	/**
+	 * 重建期间的写入，重建完成后补录到新索引，不在重建时为 null；读写都需要持有 this 的锁
+	 */
+	private List<Object> pending;
+
+	/**
+	 * 同一时间只有一个重建
+	 */
+	private final Object rebuildMutex = new Object();
+
+	public ShopSearchIndex(ShopMapper shopMapper,
+						   @Value("${hmdp.shop-search.enabled:true}") boolean enabled,
+						   @Value("${hmdp.shop-search.page-size:1000}") int pageSize,
+						   @Value("${hmdp.shop-search.max-candidates:20000}") int maxCandidates) {
+		this.shopMapper = shopMapper;
+		this.enabled = enabled;
+		this.pageSize = pageSize;
+		this.maxCandidates = maxCandidates;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		if (!enabled) {
+			return;
+		}
+		try {
+			rebuild();
+		} catch (Exception e) {
+			log.error("店铺搜索索引构建失败", e);
+		}
+	}
+
+	/**
+	 * 定时全量重建
+	 */
+	@Scheduled(initialDelayString = "${hmdp.shop-search.rebuild-interval:600000}",
+			fixedDelayString = "${hmdp.shop-search.rebuild-interval:600000}")
+	public void scheduledRebuild() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			rebuild();
+		} catch (Exception e) {
+			log.error("店铺搜索索引重建失败", e);
+		}
+	}
+
+	/**
+	 * 索引是否已构建完成
+	 *
+	 * @return boolean
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * 从 tb_shop 全量构建，构建完成后替换当前索引
+	 *
+	 * @return 店铺数量
+	 */
+	public long rebuild() {
+		synchronized (rebuildMutex) {
+			return doRebuild();
+		}
+	}
+
+	private long doRebuild() {
+		long begin = System.currentTimeMillis();
+		synchronized (this) {
+			pending = new ArrayList<>();
+		}
+		Index rebuilt = new Index();
+		boolean success = false;
+		try {
+			long lastId = 0;
+			List<Shop> shops = new ArrayList<>();
+			List<Shop> page;
+			while (!(page = shopMapper.selectList(new QueryWrapper<Shop>()
+					.select("id", "name", "area", "address", "score", "sold")
+					.gt("id", lastId).orderByAsc("id")
+					.last("LIMIT " + pageSize))).isEmpty()) {
+				shops.addAll(page);
+				lastId = page.get(page.size() - 1).getId();
+			}
+			// 按静态排序值、店铺id降序分配文档序号
+			shops.sort(Comparator.comparingLong(ShopSearchIndex::staticRank).thenComparing(Shop::getId).reversed());
+			shops.forEach(rebuilt::put);
+			rebuilt.rankedCount = rebuilt.docCount;
+			success = true;
+		} finally {
+			synchronized (this) {
+				// 补录重建期间的写入后替换，补录和替换时的写入会等待
+				if (success) {
+					for (Object write : pending) {
+						if (write instanceof Shop) {
+							rebuilt.put((Shop) write);
+						} else {
+							rebuilt.remove((Long) write);
+						}
+					}
+					index = rebuilt;
+				}
+				pending = null;
+			}
+		}
+		ready = true;
+		log.info("店铺搜索索引构建完成，店铺数量：{}，gram数量：{}，耗时：{}ms",
+				rebuilt.ordinals.size(), rebuilt.postings.size(), System.currentTimeMillis() - begin);
+		return rebuilt.ordinals.size();
+	}
+
+	/**
+	 * 新增或更新店铺
+	 *
+	 * @param shop 店铺，需要 id、name、area、address、score、sold
+	 */
+	public void put(Shop shop) {
+		if (!enabled || shop == null || shop.getId() == null) {
+			return;
+		}
+		synchronized (this) {
+			if (pending != null) {
+				pending.add(shop);
+			}
+			index.put(shop);
+		}
+	}
+
+	/**
+	 * 删除店铺
+	 *
+	 * @param id 店铺id
+	 */
+	public void remove(Long id) {
+		if (!enabled) {
+			return;
+		}
+		synchronized (this) {
+			if (pending != null) {
+				pending.add(id);
+			}
+			index.remove(id);
+		}
+	}
+
+	/**
+	 * 按关键字搜索店铺id
+	 *
+	 * @param keyword 关键字，匹配名称、商圈、地址
+	 * @param cursor  上一页返回的游标，第一页为空
+	 * @param size    每页数量
+	 * @return list 为按排序排列的店铺id，cursor 为下一页的游标
+	 * @throws IllegalArgumentException 游标格式错误
+	 */
+	public CursorResult search(String keyword, String cursor, int size) {
+		long afterRank = Long.MAX_VALUE;
+		long afterId = Long.MAX_VALUE;
+		if (!PageCursor.isFirstPage(cursor)) {
+			long[] values = PageCursor.decode(cursor, 2);
+			afterRank = values[0];
+			afterId = values[1];
+		}
+		return index.search(normalize(keyword), afterRank, afterId, size, maxCandidates);
+	}
+
+	/**
+	 * 小写并去掉空白字符
+	 */
+	private static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static long unigram(char c) {
+		return c;
+	}
+
+	private static long bigram(char c1, char c2) {
+		return 1L << 32 | (long) c1 << 16 | c2;
+	}
+
+	private static void grams(String text, Set<Long> out) {
+		for (int i = 0; i < text.length(); i++) {
+			out.add(unigram(text.charAt(i)));
+			if (i + 1 < text.length()) {
+				out.add(bigram(text.charAt(i), text.charAt(i + 1)));
+			}
+		}
+	}
+
+	/**
+	 * 评分和销量组成的静态排序值
+	 */
+	static long staticRank(Shop shop) {
+		long score = shop.getScore() == null ? 0 : Math.max(0, Math.min(shop.getScore(), 0xFFFF));
+		long sold = shop.getSold() == null ? 0 : Math.max(0, Math.min(shop.getSold(), (1 << SOLD_BITS) - 1));
+		return score << SOLD_BITS | sold;
+	}
+
+	/**
+	 * 按文档序号递增的倒排表
+	 */
+	private static class Postings {
+
+		private int[] docs = new int[4];
+		private int size;
+
+		void add(int doc) {
+			if (size == docs.length) {
+				docs = Arrays.copyOf(docs, size << 1);
+			}
+			docs[size++] = doc;
+		}
+
+		boolean contains(int doc) {
+			return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+		}
+
+		/**
+		 * 第一个不小于 doc 的位置
+		 */
+		int indexOf(int doc) {
+			int index = Arrays.binarySearch(docs, 0, size, doc);
+			return index >= 0 ? index : -index - 1;
+		}
+	}
+
+	private static class Index {
+
+		/**
+		 * key：gram，value：倒排表
+		 */
+		private final Map<Long, Postings> postings = new HashMap<>();
+
+		/**
+		 * key：店铺id，value：文档序号
+		 */
+		private final Map<Long, Integer> ordinals = new HashMap<>();
+
+		private long[] shopIds = new long[1024];
+		private long[] staticRanks = new long[1024];
+		private String[] names = new String[1024];
+		private String[] areas = new String[1024];
+		private String[] addresses = new String[1024];
+		private final BitSet deleted = new BitSet();
+		private int docCount;
+
+		/**
+		 * 全量构建时按静态排序值降序分配的文档数量，之后追加的文档序号不小于该值
+		 */
+		private int rankedCount;
+
+		private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+		void put(Shop shop) {
+			String name = normalize(shop.getName());
+			String area = normalize(shop.getArea());
+			String address = normalize(shop.getAddress());
+			Set<Long> grams = new HashSet<>();
+			grams(name, grams);
+			grams(area, grams);
+			grams(address, grams);
+			lock.writeLock().lock();
+			try {
+				removeLocked(shop.getId());
+				int doc = docCount++;
+				if (doc == shopIds.length) {
+					int capacity = doc << 1;
+					shopIds = Arrays.copyOf(shopIds, capacity);
+					staticRanks = Arrays.copyOf(staticRanks, capacity);
+					names = Arrays.copyOf(names, capacity);
+					areas = Arrays.copyOf(areas, capacity);
+					addresses = Arrays.copyOf(addresses, capacity);
+				}
+				shopIds[doc] = shop.getId();
+				staticRanks[doc] = staticRank(shop);
+				names[doc] = name;
+				areas[doc] = area;
+				addresses[doc] = address;
+				ordinals.put(shop.getId(), doc);
+				for (Long gram : grams) {
+					postings.computeIfAbsent(gram, k -> new Postings()).add(doc);
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		void remove(Long id) {
+			lock.writeLock().lock();
+			try {
+				removeLocked(id);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		private void removeLocked(Long id) {
+			Integer doc = ordinals.remove(id);
+			if (doc != null) {
+				// 倒排表中的序号在重建时清除
+				deleted.set(doc);
+				names[doc] = null;
+				areas[doc] = null;
+				addresses[doc] = null;
+			}
+		}
+
+		CursorResult search(String keyword, long afterRank, long afterId, int size, int maxCandidates) {
+			if (keyword.isEmpty()) {
+				return new CursorResult(new ArrayList<>(), null);
+			}
+			// 查询词的 gram
+			long[] grams;
+			if (keyword.length() == 1) {
+				grams = new long[]{unigram(keyword.charAt(0))};
+			} else {
+				grams = new long[keyword.length() - 1];
+				for (int i = 0; i < grams.length; i++) {
+					grams[i] = bigram(keyword.charAt(i), keyword.charAt(i + 1));
+				}
+			}
+			// 多取一条，用于判断是否有下一页
+			TopRank top = new TopRank(size + 1);
+			lock.readLock().lock();
+			try {
+				Postings[] lists = new Postings[grams.length];
+				for (int i = 0; i < grams.length; i++) {
+					lists[i] = postings.get(grams[i]);
+					if (lists[i] == null) {
+						return new CursorResult(new ArrayList<>(), null);
+					}
+				}
+				// 从最短的倒排表开始求交集
+				Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+				Postings shortest = lists[0];
+				// 倒排表后段的起始位置：重建后追加的文档
+				int tail = shortest.indexOf(rankedCount);
+				candidates:
+				for (int i = 0; i < shortest.size; i++) {
+					int doc = shortest.docs[i];
+					if (i < tail) {
+						// 前段按静态排序值降序，后续文档的排序值不会超过最高档位 + 当前文档的静态排序值
+						long bound = NAME_EXACT << RELEVANCE_SHIFT | staticRanks[doc];
+						if (i >= maxCandidates || top.isFull() && top.minRank() > bound) {
+							i = tail - 1;
+							continue;
+						}
+					}
+					if (deleted.get(doc)) {
+						continue;
+					}
+					for (int j = 1; j < lists.length; j++) {
+						if (!lists[j].contains(doc)) {
+							continue candidates;
+						}
+					}
+					long relevance = relevance(doc, keyword);
+					if (relevance == 0) {
+						// 所有 2-gram 都出现但不连续
+						continue;
+					}
+					long rank = relevance << RELEVANCE_SHIFT | staticRanks[doc];
+					long id = shopIds[doc];
+					// 只保留排在游标之后的文档
+					if (rank > afterRank || rank == afterRank && id >= afterId) {
+						continue;
+					}
+					top.offer(rank, id);
+				}
+			} finally {
+				lock.readLock().unlock();
+			}
+			return top.toResult(size);
+		}
+
+		private long relevance(int doc, String keyword) {
+			String name = names[doc];
+			if (name.equals(keyword)) {
+				return NAME_EXACT;
+			}
+			if (name.startsWith(keyword)) {
+				return NAME_PREFIX;
+			}
+			if (name.contains(keyword)) {
+				return NAME_CONTAINS;
+			}
+			if (areas[doc].contains(keyword)) {
+				return AREA_CONTAINS;
+			}
+			return addresses[doc].contains(keyword) ? ADDRESS_CONTAINS : 0;
+		}
+	}
+
+	/**
+	 * 保留排序最靠前的k个文档，基本类型数组实现的小顶堆，按排序值、店铺id比较
+	 */
+	private static class TopRank {
+
+		private final long[] ranks;
+		private final long[] ids;
+		private int size;
+
+		TopRank(int k) {
+			this.ranks = new long[k];
+			this.ids = new long[k];
+		}
+
+		boolean isFull() {
+			return size == ranks.length;
+		}
+
+		/**
+		 * 堆中排序最靠后的排序值
+		 */
+		long minRank() {
+			return ranks[0];
+		}
+
+		private boolean less(long rank1, long id1, long rank2, long id2) {
+			return rank1 < rank2 || rank1 == rank2 && id1 < id2;
+		}
+
+		void offer(long rank, long id) {
+			if (size < ranks.length) {
+				int i = size++;
+				while (i > 0) {
+					int parent = (i - 1) >>> 1;
+					if (!less(rank, id, ranks[parent], ids[parent])) {
+						break;
+					}
+					ranks[i] = ranks[parent];
+					ids[i] = ids[parent];
+					i = parent;
+				}
+				ranks[i] = rank;
+				ids[i] = id;
+			} else if (less(ranks[0], ids[0], rank, id)) {
+				int i = 0;
+				while (true) {
+					int child = (i << 1) + 1;
+					if (child >= size) {
+						break;
+					}
+					if (child + 1 < size && less(ranks[child + 1], ids[child + 1], ranks[child], ids[child])) {
+						child++;
+					}
+					if (!less(ranks[child], ids[child], rank, id)) {
+						break;
+					}
+					ranks[i] = ranks[child];
+					ids[i] = ids[child];
+					i = child;
+				}
+				ranks[i] = rank;
+				ids[i] = id;
+			}
+		}
+
+		/**
+		 * 按排序降序输出前 pageSize 条，超过 pageSize 条时返回下一页的游标
+		 */
+		CursorResult toResult(int pageSize) {
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> ranks[a] != ranks[b] ? Long.compare(ranks[b], ranks[a]) : Long.compare(ids[b], ids[a]));
+			int n = Math.min(size, pageSize);
+			List<Long> list = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				list.add(ids[order[i]]);
+			}
+			String cursor = null;
+			if (size > pageSize && n > 0) {
+				int last = order[n - 1];
+				cursor = PageCursor.encode(ranks[last], ids[last]);
+			}
+			return new CursorResult(list, cursor);
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.dto.ShopSuggestion;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 店铺名称、商圈的输入提示，前缀树常驻内存，输入时不访问数据库
+ * 说明：
+ * 1.前缀树压缩为数组：同一节点的子节点连续存放并按字符排序，查找子节点使用二分查找
+ * 2.每个节点预先计算子树中评分、销量最高的 top-n 个候选，查询只需沿前缀走到节点后直接返回
+ * 3.同名店铺合并为一个候选，取评分、销量最高的店铺；商圈取其中评分、销量最高的店铺排序
+ * 4.后台定时从 tb_shop 全量构建新的前缀树后整体替换，构建期间查询使用旧的前缀树
+ */
+@Slf4j
+@Component
+public class ShopSuggestTrie implements ApplicationRunner {
+
+	private final ShopMapper shopMapper;
+
+	private final boolean enabled;
+
+	/**
+	 * 每个节点保存的候选数量
+	 */
+	private final int topN;
+
+	private final int pageSize;
+
+	private volatile Trie trie = Trie.EMPTY;
+
+	public ShopSuggestTrie(ShopMapper shopMapper,
+						   @Value("${hmdp.shop-suggest.enabled:true}") boolean enabled,
+						   @Value("${hmdp.shop-suggest.top-n:10}") int topN,
+						   @Value("${hmdp.shop-suggest.page-size:1000}") int pageSize) {
+		this.shopMapper = shopMapper;
+		this.enabled = enabled;
+		this.topN = topN;
+		this.pageSize = pageSize;
+	}
+
+	@Override
+	public void run(ApplicationArguments args) {
+		scheduledRebuild();
+	}
+
+	/**
+	 * 定时全量重建
+	 */
+	@Scheduled(initialDelayString = "${hmdp.shop-suggest.rebuild-interval:300000}",
+			fixedDelayString = "${hmdp.shop-suggest.rebuild-interval:300000}")
+	public void scheduledRebuild() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			rebuild();
+		} catch (Exception e) {
+			log.error("店铺输入提示构建失败", e);
+		}
+	}
+
+	/**
+	 * 从 tb_shop 全量构建，构建完成后替换当前前缀树
+	 *
+	 * @return 节点数量
+	 */
+	public synchronized int rebuild() {
+		long begin = System.currentTimeMillis();
+		Builder builder = new Builder(topN);
+		long lastId = 0;
+		List<Shop> page;
+		while (!(page = shopMapper.selectList(new QueryWrapper<Shop>()
+				.select("id", "name", "area", "score", "sold")
+				.gt("id", lastId).orderByAsc("id")
+				.last("LIMIT " + pageSize))).isEmpty()) {
+			page.forEach(builder::add);
+			lastId = page.get(page.size() - 1).getId();
+		}
+		Trie rebuilt = builder.build();
+		trie = rebuilt;
+		log.info("店铺输入提示构建完成，候选数量：{}，节点数量：{}，耗时：{}ms",
+				rebuilt.texts.length, rebuilt.labels.length, System.currentTimeMillis() - begin);
+		return rebuilt.labels.length;
+	}
+
+	/**
+	 * 查询前缀的候选
+	 *
+	 * @param prefix 输入的前缀
+	 * @param size   数量，不超过 top-n
+	 * @return 按评分、销量降序排列的候选
+	 */
+	public List<ShopSuggestion> suggest(String prefix, int size) {
+		return trie.suggest(normalize(prefix), size);
+	}
+
+	/**
+	 * 小写并去掉空白字符，与搜索索引一致
+	 */
+	private static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (!Character.isWhitespace(c)) {
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 数组形式的前缀树，构建后不再修改；节点0为根节点
+	 */
+	private static class Trie {
+
+		static final Trie EMPTY = new Builder(0).build();
+
+		/**
+		 * 节点的字符
+		 */
+		private final char[] labels;
+
+		/**
+		 * 第一个子节点的序号，子节点连续存放
+		 */
+		private final int[] firstChild;
+
+		private final int[] childCount;
+
+		/**
+		 * 节点的候选在 tops 中的起始位置和数量
+		 */
+		private final int[] topStart;
+
+		private final byte[] topSize;
+
+		/**
+		 * 候选的序号
+		 */
+		private final int[] tops;
+
+		private final String[] texts;
+
+		/**
+		 * 店铺名称为店铺id，商圈为-1
+		 */
+		private final long[] shopIds;
+
+		Trie(char[] labels, int[] firstChild, int[] childCount, int[] topStart, byte[] topSize, int[] tops,
+			 String[] texts, long[] shopIds) {
+			this.labels = labels;
+			this.firstChild = firstChild;
+			this.childCount = childCount;
+			this.topStart = topStart;
+			this.topSize = topSize;
+			this.tops = tops;
+			this.texts = texts;
+			this.shopIds = shopIds;
+		}
+
+		List<ShopSuggestion> suggest(String prefix, int size) {
+			int node = 0;
+			for (int i = 0; i < prefix.length(); i++) {
+				int from = firstChild[node];
+				int child = Arrays.binarySearch(labels, from, from + childCount[node], prefix.charAt(i));
+				if (child < 0) {
+					return Collections.emptyList();
+				}
+				node = child;
+			}
+			int n = Math.min(size, topSize[node]);
+			List<ShopSuggestion> suggestions = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				int entry = tops[topStart[node] + i];
+				suggestions.add(shopIds[entry] < 0
+						? new ShopSuggestion(texts[entry], null, ShopSuggestion.TYPE_AREA)
+						: new ShopSuggestion(texts[entry], shopIds[entry], ShopSuggestion.TYPE_SHOP));
+			}
+			return suggestions;
+		}
+	}
+
+	/**
+	 * 收集候选，按 key 排序后递归生成数组形式的前缀树
+	 */
+	private static class Builder {
+
+		private final int topN;
+
+		/**
+		 * key：类型前缀 + 归一化的文本，value：候选序号
+		 */
+		private final Map<String, Integer> entryIndex = new HashMap<>();
+
+		private final List<String> keys = new ArrayList<>();
+		private final List<String> texts = new ArrayList<>();
+		private final List<Long> shopIds = new ArrayList<>();
+		private final List<Long> weights = new ArrayList<>();
+
+		private char[] labels;
+		private int[] firstChild;
+		private int[] childCount;
+		private int[] topStart;
+		private byte[] topSize;
+		private int[] tops = new int[1024];
+		private int nodeCount;
+		private int topCount;
+
+		private int[] sorted;
+		private String[] keyArray;
+		private long[] weightArray;
+
+		/**
+		 * 当前节点的 top-n 候选，按权重降序
+		 */
+		private int[] best;
+
+		Builder(int topN) {
+			this.topN = Math.min(topN, Byte.MAX_VALUE);
+		}
+
+		void add(Shop shop) {
+			long weight = ShopSearchIndex.staticRank(shop);
+			addEntry(ShopSuggestion.TYPE_SHOP, shop.getName(), shop.getId(), weight);
+			addEntry(ShopSuggestion.TYPE_AREA, shop.getArea(), -1, weight);
+		}
+
+		private void addEntry(String type, String text, long shopId, long weight) {
+			String key = normalize(text);
+			if (key.isEmpty()) {
+				return;
+			}
+			Integer entry = entryIndex.get(type + ':' + key);
+			if (entry == null) {
+				entryIndex.put(type + ':' + key, keys.size());
+				keys.add(key);
+				texts.add(text.trim());
+				shopIds.add(shopId);
+				weights.add(weight);
+			} else if (weight > weights.get(entry)) {
+				// 同名店铺、同一商圈只保留评分、销量最高的
+				texts.set(entry, text.trim());
+				shopIds.set(entry, shopId);
+				weights.set(entry, weight);
+			}
+		}
+
+		Trie build() {
+			int entries = keys.size();
+			keyArray = keys.toArray(new String[0]);
+			weightArray = new long[entries];
+			for (int i = 0; i < entries; i++) {
+				weightArray[i] = weights.get(i);
+			}
+			best = new int[Math.max(topN, 1)];
+			// 节点数量不超过所有 key 的长度之和加根节点
+			int maxNodes = 1;
+			for (String key : keys) {
+				maxNodes += key.length();
+			}
+			labels = new char[maxNodes];
+			firstChild = new int[maxNodes];
+			childCount = new int[maxNodes];
+			topStart = new int[maxNodes];
+			topSize = new byte[maxNodes];
+			nodeCount = 1;
+			sorted = new int[entries];
+			Integer[] order = new Integer[entries];
+			for (int i = 0; i < entries; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, Comparator.comparing(i -> keyArray[i]));
+			for (int i = 0; i < entries; i++) {
+				sorted[i] = order[i];
+			}
+			build(0, 0, entries, 0);
+
+			long[] ids = new long[entries];
+			for (int i = 0; i < entries; i++) {
+				ids[i] = shopIds.get(i);
+			}
+			return new Trie(Arrays.copyOf(labels, nodeCount), Arrays.copyOf(firstChild, nodeCount),
+					Arrays.copyOf(childCount, nodeCount), Arrays.copyOf(topStart, nodeCount),
+					Arrays.copyOf(topSize, nodeCount), Arrays.copyOf(tops, topCount),
+					texts.toArray(new String[0]), ids);
+		}
+
+		/**
+		 * 生成节点的子树，sorted[lo, hi) 中的 key 都以该节点的路径为前缀，路径长度为 depth
+		 */
+		private void build(int node, int lo, int hi, int depth) {
+			// 长度等于 depth 的 key 排在最前面，在该节点结束
+			int start = lo;
+			while (start < hi && keyArray[sorted[start]].length() == depth) {
+				start++;
+			}
+			// 按下一个字符分组，子节点连续分配
+			int groups = 0;
+			for (int i = start; i < hi; i++) {
+				if (i == start || charAt(i, depth) != charAt(i - 1, depth)) {
+					groups++;
+				}
+			}
+			int first = nodeCount;
+			firstChild[node] = first;
+			childCount[node] = groups;
+			nodeCount += groups;
+			int child = first;
+			int groupStart = start;
+			for (int i = start + 1; i <= hi; i++) {
+				if (i == hi || charAt(i, depth) != charAt(groupStart, depth)) {
+					labels[child] = charAt(groupStart, depth);
+					build(child, groupStart, i, depth + 1);
+					child++;
+					groupStart = i;
+				}
+			}
+			// 合并在该节点结束的 key 和所有子节点的候选，插入排序取 top-n
+			int n = 0;
+			for (int i = lo; i < start; i++) {
+				n = offer(n, sorted[i]);
+			}
+			for (int c = first; c < first + groups; c++) {
+				for (int i = 0; i < topSize[c]; i++) {
+					n = offer(n, tops[topStart[c] + i]);
+				}
+			}
+			if (topCount + n > tops.length) {
+				tops = Arrays.copyOf(tops, Math.max(tops.length << 1, topCount + n));
+			}
+			topStart[node] = topCount;
+			topSize[node] = (byte) n;
+			System.arraycopy(best, 0, tops, topCount, n);
+			topCount += n;
+		}
+
+		/**
+		 * 插入 best[0, n)，返回插入后的数量
+		 */
+		private int offer(int n, int entry) {
+			long weight = weightArray[entry];
+			if (n == topN && (n == 0 || weightArray[best[n - 1]] >= weight)) {
+				return n;
+			}
+			int i = n == topN ? n - 1 : n;
+			while (i > 0 && weightArray[best[i - 1]] < weight) {
+				best[i] = best[i - 1];
+				i--;
+			}
+			best[i] = entry;
+			return n == topN ? n : n + 1;
+		}
+
+		private char charAt(int i, int depth) {
+			return keyArray[sorted[i]].charAt(depth);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_RESTOCK_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀券售罄标记，保存在当前节点的内存中，售罄后的下单请求不访问 redis 直接返回
+ * 说明：
+ * 1.秒杀脚本返回库存不足时标记售罄，并通过 redis 发布订阅通知其他节点
+ * 2.补充库存后清除标记，并通知其他节点清除
+ * 3.标记在 ttl 后过期，过期后的第一个请求重新执行秒杀脚本确认；丢失补充库存的消息、
+ * 或者补充库存时正在执行的秒杀脚本在清除后又标记售罄时，最多 ttl 后恢复下单
+ */
+@Slf4j
+@Component
+public class SoldOutRegistry {
+
+	private final StringRedisTemplate stringRedisTemplate;
+
+	/**
+	 * 售罄标记的有效时间，单位毫秒
+	 */
+	private final long ttlMillis;
+
+	/**
+	 * key：秒杀券id，value：标记的过期时间
+	 */
+	private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+	public SoldOutRegistry(StringRedisTemplate stringRedisTemplate,
+						   @Value("${hmdp.seckill.sold-out-ttl:10000}") long ttlMillis) {
+		this.stringRedisTemplate = stringRedisTemplate;
+		this.ttlMillis = ttlMillis;
+	}
+
+	/**
+	 * 是否已经售罄，只读取本地内存
+	 *
+	 * @param voucherId 秒杀券id
+	 * @return boolean
+	 */
+	public boolean isSoldOut(Long voucherId) {
+		Long expireAt = soldOut.get(voucherId);
+		if (expireAt == null) {
+			return false;
+		}
+		if (expireAt > System.currentTimeMillis()) {
+			return true;
+		}
+		soldOut.remove(voucherId, expireAt);
+		return false;
+	}
+
+	/**
+	 * 标记售罄并通知其他节点，当前节点已经标记时不重复通知
+	 *
+	 * @param voucherId 秒杀券id
+	 */
+	public void markSoldOut(Long voucherId) {
+		if (isSoldOut(voucherId)) {
+			return;
+		}
+		onSoldOut(voucherId);
+		try {
+			stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+		} catch (Exception e) {
+			log.warn("发布售罄消息失败：{}", voucherId, e);
+		}
+	}
+
+	/**
+	 * 补充库存后清除售罄标记并通知其他节点
+	 *
+	 * @param voucherId 秒杀券id
+	 */
+	public void clear(Long voucherId) {
+		onRestocked(voucherId);
+		stringRedisTemplate.convertAndSend(SECKILL_RESTOCK_CHANNEL, voucherId.toString());
+	}
+
+	/**
+	 * 标记当前节点的售罄标记，由售罄消息的监听器调用
+	 *
+	 * @param voucherId 秒杀券id
+	 */
+	public void onSoldOut(Long voucherId) {
+		soldOut.put(voucherId, System.currentTimeMillis() + ttlMillis);
+	}
+
+	/**
+	 * 清除当前节点的售罄标记，由补充库存消息的监听器调用
+	 *
+	 * @param voucherId 秒杀券id
+	 */
+	public void onRestocked(Long voucherId) {
+		soldOut.remove(voucherId);
+	}
+}
@@ -0,0 +1,249 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀库存的组提交：同一个秒杀券的订单先累积，一次写入扣减累积的数量，库存行每批只加锁一次
+ * 说明：
+ * 1.第一个订单到达后等待 window 毫秒，或者累积到 maxBatch 个订单时写入
+ * 2.同一个秒杀券同时只有一个批次在写入，写入期间到达的订单在写入完成后立即作为下一批写入，批次大小随数据库耗时自动增大
+ * 3.每个订单得到一个结果：ACCEPTED、SOLD_OUT、DUPLICATE；写入异常时本批订单都异常结束，由调用方重试
+ * 4.没有待写入、正在写入和等待中的订单时移除该秒杀券的分组，秒杀券数量不会让分组一直增长
+ */
+@Slf4j
+public class StockWriteCoalescer {
+
+	public static final int ACCEPTED = 0;
+	public static final int SOLD_OUT = 1;
+	public static final int DUPLICATE = 2;
+
+	/**
+	 * 写入一批同一个秒杀券的订单
+	 */
+	@FunctionalInterface
+	public interface Writer {
+
+		/**
+		 * 在一个事务中扣减库存并保存订单，库存不足时按顺序接受前面的订单
+		 *
+		 * @param voucherId 秒杀券id
+		 * @param orders    按到达顺序排列的订单
+		 * @return 每个订单的结果：ACCEPTED、SOLD_OUT、DUPLICATE
+		 */
+		int[] write(Long voucherId, List<VoucherOrder> orders);
+	}
+
+	private final Writer writer;
+
+	private final long windowMillis;
+
+	private final int maxBatch;
+
+	/**
+	 * key：秒杀券id，只保存有订单在途的分组
+	 */
+	private final Map<Long, Group> groups = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "stock-coalescer-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final ExecutorService flushExecutor;
+
+	public StockWriteCoalescer(Writer writer, long windowMillis, int maxBatch) {
+		this.writer = writer;
+		this.windowMillis = windowMillis;
+		this.maxBatch = maxBatch;
+		AtomicInteger threadIndex = new AtomicInteger();
+		this.flushExecutor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "stock-coalescer-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * 提交订单，等待与同一个秒杀券的其他订单一起写入
+	 *
+	 * @param order 订单
+	 * @return 写入结果：ACCEPTED、SOLD_OUT、DUPLICATE
+	 */
+	public CompletableFuture<Integer> submit(VoucherOrder order) {
+		Entry entry = new Entry(order);
+		Group group;
+		boolean flushNow = false;
+		boolean schedule = false;
+		while (true) {
+			group = groups.computeIfAbsent(order.getVoucherId(), Group::new);
+			synchronized (group) {
+				if (group.removed) {
+					// 分组刚被移除，重新获取新的分组
+					continue;
+				}
+				group.pending.add(entry);
+				if (!group.flushing) {
+					if (group.pending.size() >= maxBatch) {
+						group.flushing = true;
+						flushNow = true;
+					} else if (!group.scheduled) {
+						group.scheduled = true;
+						schedule = true;
+					}
+				}
+				break;
+			}
+		}
+		Group target = group;
+		if (flushNow) {
+			startFlush(target);
+		} else if (schedule) {
+			scheduler.schedule(() -> onWindowClosed(target), windowMillis, TimeUnit.MILLISECONDS);
+		}
+		return entry.future;
+	}
+
+	private void onWindowClosed(Group group) {
+		synchronized (group) {
+			group.scheduled = false;
+			if (group.flushing) {
+				return;
+			}
+			if (group.pending.isEmpty()) {
+				// 等待期间订单已经累积到 maxBatch 并写完
+				removeIfIdle(group);
+				return;
+			}
+			group.flushing = true;
+		}
+		startFlush(group);
+	}
+
+	private void startFlush(Group group) {
+		try {
+			flushExecutor.execute(() -> flush(group));
+		} catch (RejectedExecutionException e) {
+			// 关闭期间在当前线程写完
+			flush(group);
+		}
+	}
+
+	/**
+	 * 循环写入累积的订单，直到没有新订单
+	 */
+	private void flush(Group group) {
+		while (true) {
+			List<Entry> batch;
+			synchronized (group) {
+				if (group.pending.isEmpty()) {
+					group.flushing = false;
+					removeIfIdle(group);
+					return;
+				}
+				if (group.pending.size() <= maxBatch) {
+					batch = group.pending;
+					group.pending = new ArrayList<>();
+				} else {
+					List<Entry> head = group.pending.subList(0, maxBatch);
+					batch = new ArrayList<>(head);
+					head.clear();
+				}
+			}
+			List<VoucherOrder> orders = new ArrayList<>(batch.size());
+			for (Entry entry : batch) {
+				orders.add(entry.order);
+			}
+			try {
+				int[] results = writer.write(group.voucherId, orders);
+				for (int i = 0; i < batch.size(); i++) {
+					batch.get(i).future.complete(results[i]);
+				}
+			} catch (Throwable e) {
+				log.error("秒杀券{}的{}个订单写入失败", group.voucherId, batch.size(), e);
+				for (Entry entry : batch) {
+					entry.future.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 移除空闲的分组，调用方持有分组的锁；之后到达的订单看到 removed 后创建新的分组
+	 */
+	private void removeIfIdle(Group group) {
+		if (group.scheduled || group.flushing || !group.pending.isEmpty()) {
+			return;
+		}
+		group.removed = true;
+		groups.remove(group.voucherId, group);
+	}
+
+	/**
+	 * 当前在途的分组数量
+	 */
+	int groupCount() {
+		return groups.size();
+	}
+
+	/**
+	 * 关闭线程池；调用前需要先停止提交订单，已经提交的订单仍会写入
+	 */
+	public void shutdown() {
+		scheduler.shutdown();
+		flushExecutor.shutdown();
+	}
+
+	private static final class Group {
+
+		private final Long voucherId;
+
+		/**
+		 * 等待写入的订单，按到达顺序排列
+		 */
+		private List<Entry> pending = new ArrayList<>();
+
+		/**
+		 * 是否有批次正在写入
+		 */
+		private boolean flushing;
+
+		/**
+		 * 是否已经安排了等待窗口结束后的写入
+		 */
+		private boolean scheduled;
+
+		/**
+		 * 是否已经从 groups 中移除，移除后不再接收订单
+		 */
+		private boolean removed;
+
+		Group(Long voucherId) {
+			this.voucherId = voucherId;
+		}
+	}
+
+	private static final class Entry {
+
+		private final VoucherOrder order;
+
+		private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+		Entry(VoucherOrder order) {
+			this.order = order;
+		}
+	}
+}
@@ -5,4 +5,10 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    public static final int BLOOM_FILTER_PAGE_SIZE = 10000;
+    public static final long SHOP_BLOOM_EXPECTED_INSERTIONS = 1_000_000L;
+    public static final long USER_BLOOM_EXPECTED_INSERTIONS = 10_000_000L;
+    public static final double BLOOM_FILTER_FPP = 0.01;
+    public static final double SHOP_GEO_RADIUS = 5000;
+    public static final int SHOP_SUGGEST_SIZE = 10;
 }
@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 缓存预热拦截器
+ */
+public class WarmupIntercepter implements HandlerInterceptor {
+
+	// 当前类不是 Spring 管理的，无法进行依赖注入，通过构造函数注入
+	private final CacheWarmer cacheWarmer;
+
+	public WarmupIntercepter(CacheWarmer cacheWarmer) {
+		this.cacheWarmer = cacheWarmer;
+	}
+
+	/**
+	 * 缓存预热完成之前拒绝读请求
+	 * 说明：逻辑过期缓存未命中时会返回数据不存在，预热完成之前读请求返回503，由网关重试其他节点；
+	 * 写请求不依赖预热数据，直接放行
+	 *
+	 * @param request	请求
+	 * @param response	响应
+	 * @param handler	handler
+	 * @return
+	 * @throws Exception
+	 */
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+		if (!"GET".equalsIgnoreCase(request.getMethod())) {
+			return true;
+		}
+		if (!cacheWarmer.isReady()) {
+			response.setStatus(503);
+			return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,29 @@
+-- 布隆过滤器全量重建，重建锁保证同一时间只有一个节点在重建
+-- KEYS[1]：重建锁的key，KEYS[2]：重建中的新位图的key，KEYS[3]：位图的key
+-- ARGV[1]：操作（begin、add、commit、abort），ARGV[2]：锁持有者标识，ARGV[3]：锁的有效时间（毫秒），ARGV[4...]：add 时写入的位置
+-- 返回 1 成功，0 未获取到锁或锁已失效
+if ARGV[1] == 'begin' then
+    if not redis.call('set', KEYS[1], ARGV[2], 'NX', 'PX', ARGV[3]) then
+        return 0
+    end
+    -- 创建空的新位图，之后新增的id同时写入新位图
+    redis.call('del', KEYS[2])
+    redis.call('setbit', KEYS[2], 0, 0)
+    return 1
+end
+if redis.call('get', KEYS[1]) ~= ARGV[2] then
+    return 0
+end
+if ARGV[1] == 'add' then
+    redis.call('pexpire', KEYS[1], ARGV[3])
+    for i = 4, #ARGV do
+        redis.call('setbit', KEYS[2], ARGV[i], 1)
+    end
+elseif ARGV[1] == 'commit' then
+    redis.call('rename', KEYS[2], KEYS[3])
+    redis.call('del', KEYS[1])
+else
+    redis.call('del', KEYS[2])
+    redis.call('del', KEYS[1])
+end
+return 1
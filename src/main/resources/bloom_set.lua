@@ -0,0 +1,14 @@
+-- 布隆过滤器新增id：设置位图的k个位置；其他节点正在全量重建时同时写入新位图，避免重建完成后丢失
+-- 位图不存在（尚未构建、被清空或淘汰）时不创建，否则只包含新增id的位图会把其他id都判断为不存在
+-- KEYS[1]：位图的key，KEYS[2]：重建中的新位图的key，ARGV：k个位置
+local current = redis.call('exists', KEYS[1]) == 1
+local building = redis.call('exists', KEYS[2]) == 1
+for i = 1, #ARGV do
+    if current then
+        redis.call('setbit', KEYS[1], ARGV[i], 1)
+    end
+    if building then
+        redis.call('setbit', KEYS[2], ARGV[i], 1)
+    end
+end
+return 0
@@ -0,0 +1,9 @@
+-- hash 缓存计数器自增：先递增计数器版本号，缓存存在时才自增，避免生成缺少实体数据的 hash
+-- 版本号让正在从数据库加载的线程发现加载期间有自增，放弃写入可能已过期的计数器
+-- KEYS[1]：缓存key，KEYS[2]：计数器版本号的key，ARGV[1]：字段名，ARGV[2]：增量，ARGV[3]：版本号的有效时间（秒）
+redis.call('incr', KEYS[2])
+redis.call('expire', KEYS[2], ARGV[3])
+if redis.call('exists', KEYS[1]) == 1 then
+    return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])
+end
+return nil
@@ -0,0 +1,15 @@
+-- 写入从数据库加载的 hash 缓存：计数器版本号与加载前读取的一致时才写入，否则加载期间有自增，数据库读到的计数器可能已过期
+-- KEYS[1]：缓存key，KEYS[2]：计数器版本号的key
+-- ARGV[1]：加载前读取的版本号（不存在时为空字符串），ARGV[2]：1 - 覆盖计数器，0 - 只写入不存在的计数器
+-- ARGV[3]：实体数据的字段名，ARGV[4]：实体数据，ARGV[5...]：计数器字段名和值
+-- 返回 1 已写入，0 版本号不一致未写入
+local version = redis.call('get', KEYS[2]) or ''
+if version ~= ARGV[1] then
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[3], ARGV[4])
+local command = ARGV[2] == '1' and 'hset' or 'hsetnx'
+for i = 5, #ARGV, 2 do
+    redis.call(command, KEYS[1], ARGV[i], ARGV[i + 1])
+end
+return 1
@@ -0,0 +1,6 @@
+-- hash 缓存计数器自增：只有缓存存在时才自增，避免生成缺少实体数据的 hash
+-- KEYS[1]：缓存key，ARGV[1]：字段名，ARGV[2]：增量
+if redis.call('exists', KEYS[1]) == 1 then
+    return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])
+end
+return nil
@@ -0,0 +1,26 @@
+-- 秒杀资格判断与库存预扣：时间窗口、库存、一人一单全部通过后扣减库存、记录下单用户，并把订单发布到订单 stream
+-- KEYS[1]：库存 hash（stock、begin、end），KEYS[2]：已下单用户 set，KEYS[3]：订单 stream
+-- ARGV[1]：用户id，ARGV[2]：当前时间（毫秒），ARGV[3]：秒杀券id，ARGV[4]：订单id
+-- 返回：0 成功，1 未开始，2 已结束，3 库存不足，4 重复下单，5 未加载
+local voucher = redis.call('hmget', KEYS[1], 'stock', 'begin', 'end')
+if not voucher[1] or not voucher[2] or not voucher[3] then
+    return 5
+end
+local now = tonumber(ARGV[2])
+if now < tonumber(voucher[2]) then
+    return 1
+end
+if now > tonumber(voucher[3]) then
+    return 2
+end
+if tonumber(voucher[1]) <= 0 then
+    return 3
+end
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    return 4
+end
+-- 先发布订单：脚本出错时不会回滚，发布失败时库存和下单用户都不写入
+redis.call('xadd', KEYS[3], '*', 'userId', ARGV[1], 'voucherId', ARGV[3], 'id', ARGV[4])
+redis.call('hincrby', KEYS[1], 'stock', -1)
+redis.call('sadd', KEYS[2], ARGV[1])
+return 0
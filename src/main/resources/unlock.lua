@@ -0,0 +1,11 @@
+-- 释放缓存重建锁：只删除持有者标识一致的锁，删除后发布锁释放消息，唤醒等待的节点
+-- KEYS：锁的key，ARGV[1]：持有者标识，ARGV[2]：锁释放消息的频道
+local released = 0
+for _, key in ipairs(KEYS) do
+    if redis.call('get', key) == ARGV[1] then
+        redis.call('del', key)
+        redis.call('publish', ARGV[2], key)
+        released = released + 1
+    end
+end
+return released
@@ -0,0 +1,77 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 缓存编解码器基准测试：对比 json 与二进制格式的逻辑过期缓存解码耗时和内存分配
+ * 运行：mvn test -Dtest=CacheCodecBenchmark
+ */
+@Slf4j
+class CacheCodecBenchmark {
+
+	private static final int WARMUP = 50_000;
+
+	private static final int ITERATIONS = 200_000;
+
+	private final JsonCacheCodec json = new JsonCacheCodec();
+
+	private final BinaryCacheCodec binary =
+			new BinaryCacheCodec(Collections.singletonList(new ShopBinarySerializer()), true);
+
+	@Test
+	void decodeLogicalExpire() {
+		Shop shop = new Shop()
+				.setId(1L).setName("103茶餐厅").setTypeId(1L)
+				.setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+				.setArea("大关").setAddress("金华路锦昌文华苑29号")
+				.setX(120.149192).setY(30.316078)
+				.setAvgPrice(80L).setSold(4215).setComments(3035).setScore(37)
+				.setOpenHours("10:00-22:00")
+				.setCreateTime(LocalDateTime.now()).setUpdateTime(LocalDateTime.now());
+		long expireMillis = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(30);
+
+		byte[] jsonRaw = json.encode(shop, expireMillis);
+		byte[] binaryRaw = binary.encode(shop, expireMillis);
+		assertEquals(shop, binary.decode(binaryRaw, Shop.class));
+		assertEquals(expireMillis, binary.readExpireMillis(binaryRaw));
+
+		log.info("json   size={} bytes", jsonRaw.length);
+		log.info("binary size={} bytes", binaryRaw.length);
+		run("json", json, jsonRaw);
+		run("binary", binary, binaryRaw);
+	}
+
+	private static void run(String name, CacheCodec codec, byte[] raw) {
+		long sink = 0;
+		for (int i = 0; i < WARMUP; i++) {
+			sink += decode(codec, raw);
+		}
+		com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+		long begin = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += decode(codec, raw);
+		}
+		long cost = System.nanoTime() - begin;
+		long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+		log.info("{} decode: {} ns/op, {} bytes/op ({})", String.format("%-6s", name),
+				String.format("%.1f", (double) cost / ITERATIONS), allocated / ITERATIONS, sink);
+	}
+
+	private static long decode(CacheCodec codec, byte[] raw) {
+		// 与 CacheClient.decodeLogical 一致：一次读取数据、过期时间和重建耗时
+		CacheCodec.Decoded<Shop> decoded = codec.decodeEntry(raw, Shop.class);
+		return decoded.getExpireMillis() + decoded.getRebuildMillis() + decoded.getData().getSold();
+	}
+}
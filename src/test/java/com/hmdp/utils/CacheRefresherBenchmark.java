@@ -0,0 +1,117 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 写路径缓存维护基准测试：更新提交后，缓存中的数据落后于数据库的时间窗口
+ * 说明：数据库和 redis 用内存变量模拟，查询数据库到写入缓存之间随机等待 0~30ms。
+ * 每轮在提交前启动一个读请求触发的缓存重建，它读到旧数据，在提交后 0~60ms 才写入缓存，
+ * 模拟并发重建覆盖写路径结果的竞争；统计提交后缓存最后一次与数据库不一致的时间，以及观察期结束时仍不一致的轮数。
+ * 对比只在提交后重建一次和增加延迟第二次重建的效果
+ * 运行：mvn test -Dtest=CacheRefresherBenchmark
+ */
+@Slf4j
+class CacheRefresherBenchmark {
+
+	private static final int ROUNDS = 40;
+
+	/**
+	 * 每轮提交后的观察时间，单位毫秒
+	 */
+	private static final long OBSERVE_MILLIS = 500;
+
+	private static final long SECOND_PASS_DELAY_MILLIS = 200;
+
+	private static final String CACHE_KEY = "cache:shop:";
+
+	@Test
+	void stalenessWindow() throws Exception {
+		run("single pass", 0);
+		run("second pass " + SECOND_PASS_DELAY_MILLIS + "ms", SECOND_PASS_DELAY_MILLIS);
+	}
+
+	private static void run(String name, long secondPassDelayMillis) throws Exception {
+		AtomicLong db = new AtomicLong();
+		AtomicReference<Long> cache = new AtomicReference<>(0L);
+		CacheClient cacheClient = mock(CacheClient.class);
+		doAnswer(invocation -> {
+			cache.set(((Shop) invocation.getArgument(1)).getSold().longValue());
+			return null;
+		}).when(cacheClient).setWithLogicExpire(anyString(), any(), anyLong(), any());
+		CacheRefresher refresher = new CacheRefresher(cacheClient, CacheRefresher.MODE_REFRESH, 3, 100, secondPassDelayMillis);
+
+		LatencyHistogram staleness = new LatencyHistogram();
+		int unconverged = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			// 并发的缓存重建：提交前读取旧数据
+			long old = db.get();
+			Thread rebuilder = start(() -> {
+				sleep(ThreadLocalRandom.current().nextLong(0, 60));
+				cache.set(old);
+			});
+			// 提交并触发写路径缓存维护
+			db.incrementAndGet();
+			long commitNanos = System.nanoTime();
+			refresher.refreshAfterCommit(CACHE_KEY, 1L, id -> slowLoad(db), 30L, TimeUnit.MINUTES);
+			// 观察期内每毫秒采样，记录最后一次不一致的时间
+			long lastStaleNanos = commitNanos;
+			long deadline = commitNanos + TimeUnit.MILLISECONDS.toNanos(OBSERVE_MILLIS);
+			boolean stale = true;
+			while (System.nanoTime() < deadline) {
+				stale = !Objects.equals(cache.get(), db.get());
+				if (stale) {
+					lastStaleNanos = System.nanoTime();
+				}
+				sleep(1);
+			}
+			rebuilder.join();
+			if (stale) {
+				unconverged++;
+			} else {
+				staleness.record(TimeUnit.NANOSECONDS.toMicros(lastStaleNanos - commitNanos));
+			}
+		}
+		refresher.shutdown();
+
+		Map<String, Long> snapshot = staleness.snapshot();
+		log.info("{} converged={}, p50={}ms, p99={}ms, max={}ms, still stale after {}ms={}/{}",
+				String.format("%-17s", name), snapshot.get("count"), snapshot.get("p50") / 1000,
+				snapshot.get("p99") / 1000, snapshot.get("max") / 1000, OBSERVE_MILLIS, unconverged, ROUNDS);
+	}
+
+	private static Shop slowLoad(AtomicLong db) {
+		long version = db.get();
+		sleep(ThreadLocalRandom.current().nextLong(0, 30));
+		return new Shop().setId(1L).setSold((int) version);
+	}
+
+	private static Thread start(Runnable runnable) {
+		Thread thread = new Thread(runnable);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 游标编解码的单元测试：合法游标原样解码，篡改、截断、格式错误的游标都被拒绝
+ */
+class PageCursorTest {
+
+	@Test
+	void roundTrip() {
+		long[][] cases = {{0}, {42}, {Long.MAX_VALUE}, {5L << 40 | 123, 1_000_001}, {1, 2, 3}};
+		for (long[] values : cases) {
+			String cursor = PageCursor.encode(values);
+			assertArrayEquals(values, PageCursor.decode(cursor, values.length));
+			assertEquals(values.length, PageCursor.lengthOf(cursor));
+			// url 安全，可以直接作为查询参数
+			assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+		}
+	}
+
+	@Test
+	void rejectsEveryFlippedBit() {
+		byte[] bytes = Base64.getUrlDecoder().decode(PageCursor.encode(7, 99));
+		for (int i = 0; i < bytes.length * 8; i++) {
+			byte[] tampered = bytes.clone();
+			tampered[i / 8] ^= (byte) (1 << (i % 8));
+			String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(tampered);
+			assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(cursor, 2), "bit " + i);
+		}
+	}
+
+	@Test
+	void rejectsMalformedCursor() {
+		String cursor = PageCursor.encode(7, 99);
+		// 长度与期望的字段数量不一致
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(cursor, 1));
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(cursor, 3));
+		// 截断
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(cursor.substring(0, cursor.length() - 2), 2));
+		// 非法字符
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("abc+/=", 2));
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("not a cursor", 2));
+		// 负数即使校验和正确也拒绝
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode(PageCursor.encode(-1, 99), 2));
+		assertEquals(-1, PageCursor.lengthOf("not a cursor"));
+		assertEquals(-1, PageCursor.lengthOf(""));
+		assertEquals(-1, PageCursor.lengthOf("AAAA"));
+	}
+
+	@Test
+	void pageMode() {
+		assertFalse(PageCursor.isCursorMode(null));
+		assertTrue(PageCursor.isCursorMode(""));
+		assertTrue(PageCursor.isFirstPage(null));
+		assertTrue(PageCursor.isFirstPage(""));
+		assertFalse(PageCursor.isFirstPage(PageCursor.encode(1)));
+	}
+}
@@ -0,0 +1,135 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * id生成器基准测试：多线程生成id的吞吐量，以及生成的id是否唯一、每个线程内是否递增
+ * 说明：redis 用内存计数器模拟，每次 INCRBY 等待 200us 模拟网络往返。
+ * 对比每个id一次 INCRBY、固定号段长度 1000、号段长度自适应（1000 ~ 100000）的吞吐量；另外模拟时钟回拨，id 不会重复也不会倒序
+ * 运行：mvn test -Dtest=RedisIdWorkerBenchmark
+ */
+@Slf4j
+class RedisIdWorkerBenchmark {
+
+	private static final int THREADS = 8;
+
+	private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+	@Test
+	void throughput() throws Exception {
+		run("INCR per id", 1, 1, 5_000);
+		run("segment 1000", 1000, 1000, 2_000_000);
+		run("adaptive", 1000, 100_000, 2_000_000);
+	}
+
+	@Test
+	void clockRollback() {
+		AtomicLong now = new AtomicLong(System.currentTimeMillis());
+		RedisIdWorker worker = new RedisIdWorker(mockRedis(new AtomicInteger()), 100, 100, 1000, now::get);
+		long last = 0;
+		for (int i = 0; i < 100_000; i++) {
+			if (i % 1000 == 0) {
+				// 每 1000 个id时钟前进或者回拨最多 10s
+				now.addAndGet((i / 1000 % 2 == 0 ? 1 : -1) * 10_000L);
+			}
+			long id = worker.nextId("order");
+			assertTrue(id > last, "id 倒序：" + id + " <= " + last);
+			last = id;
+		}
+		worker.shutdown();
+	}
+
+	private static void run(String name, int step, int maxStep, int idsPerThread) throws Exception {
+		AtomicInteger leases = new AtomicInteger();
+		RedisIdWorker worker = new RedisIdWorker(mockRedis(leases), step, maxStep, 5000, System::currentTimeMillis);
+		// 预热
+		for (int i = 0; i < Math.min(idsPerThread, 100_000); i++) {
+			worker.nextId("warmup");
+		}
+
+		long[][] ids = new long[THREADS][idsPerThread];
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			long[] out = ids[t];
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				for (int i = 0; i < out.length; i++) {
+					out[i] = worker.nextId("order");
+				}
+			});
+			threads[t].start();
+		}
+		leases.set(0);
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - begin;
+		worker.shutdown();
+
+		// 唯一、线程内递增
+		long[] all = new long[THREADS * idsPerThread];
+		for (int t = 0; t < THREADS; t++) {
+			for (int i = 1; i < idsPerThread; i++) {
+				assertTrue(ids[t][i] > ids[t][i - 1]);
+			}
+			System.arraycopy(ids[t], 0, all, t * idsPerThread, idsPerThread);
+		}
+		Arrays.sort(all);
+		for (int i = 1; i < all.length; i++) {
+			assertTrue(all[i] != all[i - 1], "重复的id：" + all[i]);
+		}
+		assertEquals(THREADS * idsPerThread, all.length);
+
+		double perSecond = all.length * 1e9 / elapsed;
+		log.info("{} threads={} ids={} elapsed={}ms throughput={} ids/s redis={}",
+				String.format("%-14s", name), THREADS, all.length, TimeUnit.NANOSECONDS.toMillis(elapsed),
+				Math.round(perSecond), leases.get());
+	}
+
+	/**
+	 * 内存模拟的 redis INCRBY，每次调用等待一个网络往返
+	 */
+	@SuppressWarnings("unchecked")
+	private static StringRedisTemplate mockRedis(AtomicInteger leases) {
+		Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+		ValueOperations<String, String> ops = mock(ValueOperations.class);
+		when(ops.increment(anyString(), anyLong())).thenAnswer(invocation -> {
+			leases.incrementAndGet();
+			long deadline = System.nanoTime() + ROUND_TRIP_NANOS;
+			while (System.nanoTime() < deadline) {
+				Thread.onSpinWait();
+			}
+			return counters.computeIfAbsent(invocation.getArgument(0), k -> new AtomicLong())
+					.addAndGet(invocation.getArgument(1));
+		});
+		StringRedisTemplate template = mock(StringRedisTemplate.class);
+		when(template.opsForValue()).thenReturn(ops);
+		return template;
+	}
+}
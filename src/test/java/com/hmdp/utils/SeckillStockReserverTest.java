@@ -0,0 +1,156 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.SeckillVoucher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 秒杀库存预扣的并发测试：大量用户同时抢购，每个用户并发重复下单，预扣成功的数量等于库存且每个用户最多一次，
+ * 订单 stream 中的订单数量等于预扣成功的数量
+ * 说明：需要 redis 5.0 及以上版本，默认连接 127.0.0.1:6379，可以通过 -Dredis.host、-Dredis.port 指定，redis 不可用时跳过
+ */
+class SeckillStockReserverTest {
+
+	private static final int STOCK = 100;
+
+	private static final int USERS = 2000;
+
+	private static final int ATTEMPTS_PER_USER = 3;
+
+	private LettuceConnectionFactory factory;
+
+	private StringRedisTemplate template;
+
+	private SeckillStockReserver reserver;
+
+	private final long voucherId = 900_000_000L + System.nanoTime() % 1_000_000L;
+
+	private final String streamKey = "test:stream:orders:" + voucherId;
+
+	private final AtomicLong orderIds = new AtomicLong();
+
+	@BeforeEach
+	void setUp() {
+		factory = new LettuceConnectionFactory(System.getProperty("redis.host", "127.0.0.1"),
+				Integer.getInteger("redis.port", 6379));
+		factory.afterPropertiesSet();
+		template = new StringRedisTemplate(factory);
+		try {
+			template.hasKey(SECKILL_STOCK_KEY + voucherId);
+		} catch (Exception e) {
+			factory.destroy();
+			Assumptions.assumeTrue(false, "redis 不可用，跳过秒杀并发测试");
+		}
+		reserver = new SeckillStockReserver(template, streamKey);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (reserver == null) {
+			return;
+		}
+		template.delete(Arrays.asList(SECKILL_STOCK_KEY + voucherId, SECKILL_ORDER_KEY + voucherId, streamKey));
+		factory.destroy();
+	}
+
+	@Test
+	void noOversellUnderConcurrentLoad() throws Exception {
+		reserver.save(voucher(STOCK, LocalDateTime.now().minusMinutes(1), LocalDateTime.now().plusMinutes(10)));
+
+		Set<Long> winners = ConcurrentHashMap.newKeySet();
+		AtomicInteger success = new AtomicInteger();
+		AtomicInteger soldOut = new AtomicInteger();
+		AtomicInteger duplicate = new AtomicInteger();
+		AtomicInteger doubleWins = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(64);
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(USERS * ATTEMPTS_PER_USER);
+		for (int attempt = 0; attempt < ATTEMPTS_PER_USER; attempt++) {
+			for (long userId = 1; userId <= USERS; userId++) {
+				long user = userId;
+				pool.execute(() -> {
+					try {
+						start.await();
+						int result = reserver.reserve(voucherId, user, orderIds.incrementAndGet());
+						if (result == SeckillStockReserver.SUCCESS) {
+							success.incrementAndGet();
+							if (!winners.add(user)) {
+								doubleWins.incrementAndGet();
+							}
+						} else if (result == SeckillStockReserver.SOLD_OUT) {
+							soldOut.incrementAndGet();
+						} else if (result == SeckillStockReserver.DUPLICATE) {
+							duplicate.incrementAndGet();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				});
+			}
+		}
+		start.countDown();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		pool.shutdown();
+
+		assertEquals(STOCK, success.get());
+		assertEquals(STOCK, winners.size());
+		assertEquals(0, doubleWins.get());
+		assertEquals(USERS * ATTEMPTS_PER_USER, success.get() + soldOut.get() + duplicate.get());
+		assertEquals("0", template.opsForHash().get(SECKILL_STOCK_KEY + voucherId, "stock"));
+		assertEquals(Long.valueOf(STOCK), template.opsForSet().size(SECKILL_ORDER_KEY + voucherId));
+		assertEquals(Long.valueOf(STOCK), template.opsForStream().size(streamKey));
+	}
+
+	@Test
+	void rejectsOutsideTimeWindow() {
+		reserver.save(voucher(STOCK, LocalDateTime.now().plusMinutes(1), LocalDateTime.now().plusMinutes(10)));
+		assertEquals(SeckillStockReserver.NOT_STARTED, reserver.reserve(voucherId, 1L, orderIds.incrementAndGet()));
+
+		reserver.save(voucher(STOCK, LocalDateTime.now().minusMinutes(10), LocalDateTime.now().minusMinutes(1)));
+		assertEquals(SeckillStockReserver.ENDED, reserver.reserve(voucherId, 1L, orderIds.incrementAndGet()));
+		assertEquals(String.valueOf(STOCK), template.opsForHash().get(SECKILL_STOCK_KEY + voucherId, "stock"));
+	}
+
+	@Test
+	void loadDoesNotOverwriteReservedStock() {
+		assertEquals(SeckillStockReserver.NOT_LOADED, reserver.reserve(voucherId, 1L, orderIds.incrementAndGet()));
+		SeckillVoucher voucher = voucher(2, LocalDateTime.now().minusMinutes(1), LocalDateTime.now().plusMinutes(10));
+		reserver.load(voucher);
+		assertEquals(SeckillStockReserver.SUCCESS, reserver.reserve(voucherId, 1L, orderIds.incrementAndGet()));
+		// 其他节点重复加载
+		reserver.load(voucher);
+		assertEquals(SeckillStockReserver.SUCCESS, reserver.reserve(voucherId, 2L, orderIds.incrementAndGet()));
+		assertEquals(SeckillStockReserver.SOLD_OUT, reserver.reserve(voucherId, 3L, orderIds.incrementAndGet()));
+	}
+
+	private SeckillVoucher voucher(int stock, LocalDateTime begin, LocalDateTime end) {
+		SeckillVoucher voucher = new SeckillVoucher();
+		voucher.setVoucherId(voucherId);
+		voucher.setStock(stock);
+		voucher.setBeginTime(begin);
+		voucher.setEndTime(end);
+		return voucher;
+	}
+}
@@ -0,0 +1,191 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 附近店铺查询基准测试：本地网格索引与 redis GEORADIUS 的对比
+ * 说明：在杭州附近 20km 范围内随机生成 5 个类型共 10 万个店铺，随机查询点，半径 5km 取前 10 个。
+ * 先与暴力计算的结果比对正确性，再统计距离计算、本地半径查询、k近邻查询的耗时；
+ * 本机 6379 端口有 redis 时同时统计 GEORADIUS 的耗时（写入 shop:geo:90000000x 后删除）
+ * 运行：mvn test -Dtest=ShopGeoIndexBenchmark
+ */
+@Slf4j
+class ShopGeoIndexBenchmark {
+
+	private static final int SHOPS = 100_000;
+
+	private static final int TYPES = 5;
+
+	private static final int QUERIES = 20_000;
+
+	private static final double RADIUS = 5000;
+
+	private static final int SIZE = 10;
+
+	private static final double CENTER_X = 120.15;
+
+	private static final double CENTER_Y = 30.28;
+
+	private static final double SPREAD = 0.2;
+
+	/**
+	 * 写入 redis 的类型id偏移，避免与真实数据冲突
+	 */
+	private static final long BENCH_TYPE_OFFSET = 900_000_000L;
+
+	@Test
+	void compare() {
+		Random random = new Random(42);
+		List<Shop> shops = new ArrayList<>(SHOPS);
+		for (long id = 1; id <= SHOPS; id++) {
+			shops.add(new Shop().setId(id).setTypeId(1 + id % TYPES)
+					.setX(CENTER_X + (random.nextDouble() - 0.5) * SPREAD)
+					.setY(CENTER_Y + (random.nextDouble() - 0.5) * SPREAD));
+		}
+		LocalShopGeoIndex index = new LocalShopGeoIndex(mock(ShopMapper.class), true, 1000, 1000);
+		shops.forEach(index::put);
+		double[][] queries = new double[QUERIES][];
+		for (int i = 0; i < QUERIES; i++) {
+			queries[i] = new double[]{CENTER_X + (random.nextDouble() - 0.5) * SPREAD,
+					CENTER_Y + (random.nextDouble() - 0.5) * SPREAD, 1 + i % TYPES};
+		}
+
+		verify(index, shops, queries);
+		distanceFormula(shops);
+		measure("local radius", queries, q -> index.search((long) q[2], q[0], q[1], RADIUS, 0, SIZE));
+		measure("local nearest", queries, q -> index.nearest((long) q[2], q[0], q[1], SIZE));
+		redis(shops, queries);
+	}
+
+	/**
+	 * 与暴力计算比对前 10 个店铺
+	 */
+	private static void verify(LocalShopGeoIndex index, List<Shop> shops, double[][] queries) {
+		for (int i = 0; i < 200; i++) {
+			double[] q = queries[i];
+			long[] expected = shops.stream()
+					.filter(shop -> shop.getTypeId() == (long) q[2])
+					.sorted((a, b) -> Double.compare(GeoUtils.distance(q[0], q[1], a.getX(), a.getY()),
+							GeoUtils.distance(q[0], q[1], b.getX(), b.getY())))
+					.limit(SIZE).mapToLong(Shop::getId).toArray();
+			long[] radius = index.search((long) q[2], q[0], q[1], RADIUS, 0, SIZE)
+					.keySet().stream().mapToLong(Long::longValue).toArray();
+			long[] nearest = index.nearest((long) q[2], q[0], q[1], SIZE)
+					.keySet().stream().mapToLong(Long::longValue).toArray();
+			assertArrayEquals(expected, radius);
+			assertArrayEquals(expected, nearest);
+		}
+		assertEquals(1000, index.search(1L, CENTER_X, CENTER_Y, 100_000, 0, 1000).size());
+	}
+
+	/**
+	 * 原 BlogCommentsController.getDistance（Math.pow）与批量 haversine 的对比
+	 */
+	private static void distanceFormula(List<Shop> shops) {
+		int n = shops.size();
+		double[] lngs = new double[n];
+		double[] lats = new double[n];
+		double[] cosLats = new double[n];
+		for (int i = 0; i < n; i++) {
+			lngs[i] = Math.toRadians(shops.get(i).getX());
+			lats[i] = Math.toRadians(shops.get(i).getY());
+			cosLats[i] = Math.cos(lats[i]);
+		}
+		double[] out = new double[n];
+		double lng = Math.toRadians(CENTER_X);
+		double lat = Math.toRadians(CENTER_Y);
+		double cosLat = Math.cos(lat);
+		double sink = 0;
+		for (int round = 0; round < 30; round++) {
+			long begin = System.nanoTime();
+			for (Shop shop : shops) {
+				sink += powDistance(CENTER_X, CENTER_Y, shop.getX(), shop.getY());
+			}
+			long pow = System.nanoTime() - begin;
+			begin = System.nanoTime();
+			GeoUtils.distances(lng, lat, cosLat, lngs, lats, cosLats, n, out);
+			long batch = System.nanoTime() - begin;
+			sink += out[round];
+			if (round == 29) {
+				log.info("distance      pow={}ns/op, batch haversine={}ns/op",
+						String.format("%.1f", (double) pow / n), String.format("%.1f", (double) batch / n));
+			}
+		}
+		log.info("checksum {}", (long) sink);
+	}
+
+	private static void measure(String name, double[][] queries, Consumer<double[]> query) {
+		// 预热
+		for (double[] q : queries) {
+			query.accept(q);
+		}
+		long[] latencies = new long[queries.length];
+		for (int i = 0; i < queries.length; i++) {
+			long begin = System.nanoTime();
+			query.accept(queries[i]);
+			latencies[i] = System.nanoTime() - begin;
+		}
+		Arrays.sort(latencies);
+		log.info("{} p50={}us, p99={}us, throughput={}/s", String.format("%-14s", name),
+				latencies[latencies.length / 2] / 1000, latencies[latencies.length * 99 / 100] / 1000,
+				Math.round(queries.length * 1e9 / Arrays.stream(latencies).sum()));
+	}
+
+	private static void redis(List<Shop> shops, double[][] queries) {
+		LettuceConnectionFactory factory = new LettuceConnectionFactory("127.0.0.1", 6379);
+		factory.afterPropertiesSet();
+		try {
+			StringRedisTemplate template = new StringRedisTemplate(factory);
+			try {
+				template.hasKey(SHOP_GEO_KEY + BENCH_TYPE_OFFSET);
+			} catch (Exception e) {
+				Assumptions.assumeTrue(false, "redis 不可用，跳过 GEORADIUS 对比");
+			}
+			template.executePipelined((RedisCallback<Object>) connection -> {
+				for (Shop shop : shops) {
+					connection.geoAdd((SHOP_GEO_KEY + (BENCH_TYPE_OFFSET + shop.getTypeId())).getBytes(StandardCharsets.UTF_8),
+							new Point(shop.getX(), shop.getY()), shop.getId().toString().getBytes(StandardCharsets.UTF_8));
+				}
+				return null;
+			});
+			ShopGeoIndex redisIndex = new ShopGeoIndex(template, mock(ShopMapper.class), false, 1000, 1000);
+			measure("redis radius", Arrays.copyOf(queries, QUERIES / 10),
+					q -> redisIndex.search(BENCH_TYPE_OFFSET + (long) q[2], q[0], q[1], RADIUS, 0, SIZE));
+			for (long type = 1; type <= TYPES; type++) {
+				template.delete(SHOP_GEO_KEY + (BENCH_TYPE_OFFSET + type));
+			}
+		} finally {
+			factory.destroy();
+		}
+	}
+
+	private static double powDistance(double longitude1, double latitude1, double longitude2, double latitude2) {
+		double lat1 = Math.toRadians(latitude1);
+		double lat2 = Math.toRadians(latitude2);
+		double a = lat1 - lat2;
+		double b = Math.toRadians(longitude1) - Math.toRadians(longitude2);
+		double s = 2 * Math.asin(Math.sqrt(Math.pow(Math.sin(a / 2), 2) +
+				Math.cos(lat1) * Math.cos(lat2) * Math.pow(Math.sin(b / 2), 2)));
+		return s * 6378.137;
+	}
+}
@@ -0,0 +1,246 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.CursorResult;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 店铺搜索倒排索引的单元测试：分页结果与暴力扫描的排序一致
+ * 说明：覆盖提前结束、游标边界、标记删除、重建后追加的文档和重建期间写入的补录
+ */
+class ShopSearchIndexTest {
+
+	private static final String[] NAME_CHARS = {"茶", "餐", "厅", "火", "锅", "店", "咖", "啡", "A", "b"};
+
+	private static final String[] AREAS = {"大关", "拱宸桥", "运河上街", "北城天地", "远洋乐堤港"};
+
+	private static final String[] KEYWORDS = {"茶", "茶餐", "餐厅", "火锅店", "a", "AB", "大关", "运河", "路", "12号", "不存在"};
+
+	private final Random random = new Random(20230112);
+
+	/**
+	 * key：店铺id，value：店铺，与索引保持一致的期望数据
+	 */
+	private final Map<Long, Shop> shops = new LinkedHashMap<>();
+
+	private ShopMapper shopMapper;
+
+	@BeforeEach
+	void setUp() {
+		shopMapper = mock(ShopMapper.class);
+		for (long id = 1; id <= 2000; id++) {
+			shops.put(id, randomShop(id));
+		}
+	}
+
+	@Test
+	void pagesMatchBruteForce() {
+		ShopSearchIndex index = newIndex(Integer.MAX_VALUE);
+		index.rebuild();
+		for (String keyword : KEYWORDS) {
+			for (int size : new int[]{1, 5, 10, 37}) {
+				assertEquals(bruteForce(keyword), searchAll(index, keyword, size), keyword + " size=" + size);
+			}
+		}
+	}
+
+	@Test
+	void incrementalWritesMatchBruteForce() {
+		ShopSearchIndex index = newIndex(Integer.MAX_VALUE);
+		index.rebuild();
+		// 更新：旧文档标记删除，新文档追加到后段
+		for (long id = 1; id <= 300; id++) {
+			Shop shop = randomShop(id);
+			shops.put(id, shop);
+			index.put(shop);
+		}
+		// 删除
+		for (long id = 301; id <= 400; id++) {
+			shops.remove(id);
+			index.remove(id);
+		}
+		// 新增
+		for (long id = 2001; id <= 2200; id++) {
+			Shop shop = randomShop(id);
+			shops.put(id, shop);
+			index.put(shop);
+		}
+		for (String keyword : KEYWORDS) {
+			assertEquals(bruteForce(keyword), searchAll(index, keyword, 10), keyword);
+		}
+		// 重建后结果不变
+		index.rebuild();
+		for (String keyword : KEYWORDS) {
+			assertEquals(bruteForce(keyword), searchAll(index, keyword, 10), keyword);
+		}
+	}
+
+	@Test
+	void writesDuringRebuildAreReplayed() {
+		ShopSearchIndex index = newIndex(Integer.MAX_VALUE);
+		index.rebuild();
+		List<Shop> snapshot = new ArrayList<>(shops.values());
+		AtomicInteger calls = new AtomicInteger();
+		when(shopMapper.selectList(any())).thenAnswer(invocation -> {
+			if (calls.getAndIncrement() > 0) {
+				return Collections.emptyList();
+			}
+			// 重建读取数据之后、替换之前的写入
+			Shop updated = randomShop(1L).setName("茶餐厅");
+			shops.put(1L, updated);
+			index.put(updated);
+			shops.remove(2L);
+			index.remove(2L);
+			return snapshot;
+		});
+		index.rebuild();
+		for (String keyword : KEYWORDS) {
+			assertEquals(bruteForce(keyword), searchAll(index, keyword, 10), keyword);
+		}
+		assertTrue(searchAll(index, "茶餐厅", 10).contains(1L));
+	}
+
+	@Test
+	void earlyTerminationKeepsTopResults() {
+		// 只检查前段的少量文档时，第一页仍然是排序最靠前的结果：前段按静态排序值降序，提前结束只跳过排不进前 size 的文档
+		ShopSearchIndex index = newIndex(Integer.MAX_VALUE);
+		index.rebuild();
+		for (String keyword : KEYWORDS) {
+			List<Long> expected = bruteForce(keyword);
+			CursorResult page = index.search(keyword, "", 3);
+			assertEquals(expected.subList(0, Math.min(3, expected.size())), page.getList(), keyword);
+			assertEquals(expected.size() > 3, page.getCursor() != null, keyword);
+		}
+	}
+
+	@Test
+	void rejectsTamperedCursor() {
+		ShopSearchIndex index = newIndex(Integer.MAX_VALUE);
+		index.rebuild();
+		String cursor = index.search("茶", "", 5).getCursor();
+		// 修改排序值所在的字符，校验和不一致
+		char c = cursor.charAt(4);
+		String tampered = cursor.substring(0, 4) + (c == 'A' ? 'B' : 'A') + cursor.substring(5);
+		assertThrows(IllegalArgumentException.class, () -> index.search("茶", tampered, 5));
+		assertThrows(IllegalArgumentException.class, () -> index.search("茶", "not a cursor", 5));
+		assertThrows(IllegalArgumentException.class, () -> index.search("茶", PageCursor.encode(1), 5));
+	}
+
+	@Test
+	void emptyKeywordReturnsEmptyPage() {
+		ShopSearchIndex index = newIndex(Integer.MAX_VALUE);
+		index.rebuild();
+		CursorResult page = index.search(" ", "", 10);
+		assertTrue(page.getList().isEmpty());
+		assertNull(page.getCursor());
+	}
+
+	private ShopSearchIndex newIndex(int maxCandidates) {
+		when(shopMapper.selectList(any())).thenAnswer(new PagedAnswer());
+		return new ShopSearchIndex(shopMapper, true, 500, maxCandidates);
+	}
+
+	/**
+	 * 一次返回所有店铺，第二次返回空页
+	 */
+	private class PagedAnswer implements Answer<List<Shop>> {
+
+		private boolean done;
+
+		@Override
+		public List<Shop> answer(InvocationOnMock invocation) {
+			List<Shop> page = done ? Collections.emptyList() : new ArrayList<>(shops.values());
+			done = !done;
+			return page;
+		}
+	}
+
+	/**
+	 * 按游标翻页取出所有结果
+	 */
+	private static List<Long> searchAll(ShopSearchIndex index, String keyword, int size) {
+		List<Long> ids = new ArrayList<>();
+		String cursor = "";
+		while (true) {
+			CursorResult page = index.search(keyword, cursor, size);
+			for (Object id : page.getList()) {
+				ids.add((Long) id);
+			}
+			assertTrue(page.getList().size() <= size);
+			if (page.getCursor() == null) {
+				return ids;
+			}
+			assertEquals(size, page.getList().size());
+			cursor = page.getCursor();
+		}
+	}
+
+	/**
+	 * 暴力扫描所有店铺，按 (匹配档位, 评分, 销量, 店铺id) 降序
+	 */
+	private List<Long> bruteForce(String keyword) {
+		String key = normalize(keyword);
+		List<long[]> matches = new ArrayList<>();
+		for (Shop shop : shops.values()) {
+			String name = normalize(shop.getName());
+			long relevance;
+			if (name.equals(key)) {
+				relevance = 5;
+			} else if (name.startsWith(key)) {
+				relevance = 4;
+			} else if (name.contains(key)) {
+				relevance = 3;
+			} else if (normalize(shop.getArea()).contains(key)) {
+				relevance = 2;
+			} else if (normalize(shop.getAddress()).contains(key)) {
+				relevance = 1;
+			} else {
+				continue;
+			}
+			matches.add(new long[]{relevance, shop.getScore(), shop.getSold(), shop.getId()});
+		}
+		matches.sort(Comparator.<long[]>comparingLong(m -> m[0]).thenComparingLong(m -> m[1])
+				.thenComparingLong(m -> m[2]).thenComparingLong(m -> m[3]).reversed());
+		List<Long> ids = new ArrayList<>(matches.size());
+		matches.forEach(m -> ids.add(m[3]));
+		return ids;
+	}
+
+	private static String normalize(String text) {
+		return text.replaceAll("\\s", "").toLowerCase();
+	}
+
+	private Shop randomShop(Long id) {
+		StringBuilder name = new StringBuilder();
+		int length = 1 + random.nextInt(4);
+		for (int i = 0; i < length; i++) {
+			name.append(NAME_CHARS[random.nextInt(NAME_CHARS.length)]);
+		}
+		// 评分、销量取值范围小，制造大量相同的静态排序值
+		return new Shop().setId(id).setName(name.toString())
+				.setArea(AREAS[random.nextInt(AREAS.length)])
+				.setAddress("金华路" + random.nextInt(30) + "号")
+				.setScore(30 + random.nextInt(5)).setSold(random.nextInt(20));
+	}
+}
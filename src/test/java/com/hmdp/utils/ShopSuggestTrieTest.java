@@ -0,0 +1,151 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestion;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 输入提示前缀树的单元测试：每个前缀的候选与暴力扫描的 top-n 一致
+ * 说明：权重相同的候选先后顺序不固定，按权重序列和候选集合比较
+ */
+class ShopSuggestTrieTest {
+
+	private static final String[] NAME_CHARS = {"茶", "餐", "厅", "火", "锅", "A", "b", " "};
+
+	private static final String[] AREAS = {"大关", "大关路", "拱宸桥", "运河上街", "Riverside"};
+
+	private static final int TOP_N = 10;
+
+	private final Random random = new Random(20230112);
+
+	private final List<Shop> shops = new ArrayList<>();
+
+	private ShopSuggestTrie trie;
+
+	@BeforeEach
+	void setUp() {
+		for (long id = 1; id <= 3000; id++) {
+			StringBuilder name = new StringBuilder();
+			int length = 1 + random.nextInt(5);
+			for (int i = 0; i < length; i++) {
+				name.append(NAME_CHARS[random.nextInt(NAME_CHARS.length)]);
+			}
+			if (name.toString().trim().isEmpty()) {
+				name.append("茶");
+			}
+			shops.add(new Shop().setId(id).setName(name.toString())
+					.setArea(AREAS[random.nextInt(AREAS.length)])
+					.setScore(random.nextInt(50)).setSold(random.nextInt(100)));
+		}
+		ShopMapper shopMapper = mock(ShopMapper.class);
+		when(shopMapper.selectList(any())).thenReturn(shops, Collections.emptyList());
+		trie = new ShopSuggestTrie(shopMapper, true, TOP_N, 5000);
+		trie.rebuild();
+	}
+
+	@Test
+	void suggestionsMatchBruteForce() {
+		// 所有出现过的前缀，以及不存在的前缀
+		Set<String> prefixes = new HashSet<>();
+		prefixes.add("");
+		prefixes.add("不存在");
+		prefixes.add("茶餐厅火锅ab茶");
+		for (Shop shop : shops) {
+			for (String text : new String[]{normalize(shop.getName()), normalize(shop.getArea())}) {
+				for (int i = 1; i <= text.length(); i++) {
+					prefixes.add(text.substring(0, i));
+				}
+			}
+		}
+		Map<String, Candidate> candidates = bruteForceCandidates();
+		for (String prefix : prefixes) {
+			for (int size : new int[]{1, 3, TOP_N, TOP_N + 5}) {
+				assertMatches(candidates, prefix, size);
+			}
+		}
+	}
+
+	@Test
+	void normalizesInput() {
+		assertEquals(trie.suggest("riverSIDE", TOP_N), trie.suggest(" River side ", TOP_N));
+		assertTrue(trie.suggest("riverside", TOP_N).stream()
+				.allMatch(s -> ShopSuggestion.TYPE_AREA.equals(s.getType()) && s.getShopId() == null));
+	}
+
+	private void assertMatches(Map<String, Candidate> candidates, String prefix, int size) {
+		List<Candidate> expected = new ArrayList<>();
+		for (Candidate candidate : candidates.values()) {
+			if (candidate.key.startsWith(prefix)) {
+				expected.add(candidate);
+			}
+		}
+		expected.sort((a, b) -> Long.compare(b.weight, a.weight));
+		int n = Math.min(Math.min(size, TOP_N), expected.size());
+
+		List<ShopSuggestion> actual = trie.suggest(prefix, size);
+		assertEquals(n, actual.size(), prefix);
+		for (int i = 0; i < n; i++) {
+			Candidate candidate = candidates.get(actual.get(i).getType() + ':' + normalize(actual.get(i).getText()));
+			assertTrue(candidate != null && candidate.key.startsWith(prefix), prefix);
+			// 同名店铺合并为评分、销量最高的一家
+			assertEquals(candidate.shopId, actual.get(i).getShopId(), prefix);
+			assertEquals(expected.get(i).weight, candidate.weight, prefix + " #" + i);
+		}
+	}
+
+	/**
+	 * 暴力合并同名店铺、同一商圈，保留评分、销量最高的
+	 */
+	private Map<String, Candidate> bruteForceCandidates() {
+		Map<String, Candidate> candidates = new HashMap<>();
+		for (Shop shop : shops) {
+			long weight = ShopSearchIndex.staticRank(shop);
+			merge(candidates, ShopSuggestion.TYPE_SHOP, normalize(shop.getName()), shop.getId(), weight);
+			merge(candidates, ShopSuggestion.TYPE_AREA, normalize(shop.getArea()), null, weight);
+		}
+		return candidates;
+	}
+
+	private static void merge(Map<String, Candidate> candidates, String type, String key, Long shopId, long weight) {
+		Candidate old = candidates.get(type + ':' + key);
+		if (old == null || weight > old.weight) {
+			candidates.put(type + ':' + key, new Candidate(key, shopId, weight));
+		}
+	}
+
+	private static String normalize(String text) {
+		return text.replaceAll("\\s", "").toLowerCase();
+	}
+
+	private static final class Candidate {
+
+		private final String key;
+
+		private final Long shopId;
+
+		private final long weight;
+
+		Candidate(String key, Long shopId, long weight) {
+			this.key = key;
+			this.shopId = shopId;
+			this.weight = weight;
+		}
+	}
+}